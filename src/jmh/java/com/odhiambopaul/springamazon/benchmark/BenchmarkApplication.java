@@ -0,0 +1,26 @@
+package com.odhiambopaul.springamazon.benchmark;
+
+import com.odhiambopaul.springamazon.SpringAmazonApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Starts the application without a web server, with in-memory AWS clients and an embedded H2
+ * database (see application-benchmark.properties).
+ */
+final class BenchmarkApplication {
+
+    private BenchmarkApplication() {
+    }
+
+    static ConfigurableApplicationContext start(String... properties) {
+        return new SpringApplicationBuilder(SpringAmazonApplication.class, BenchmarkAwsBeans.class)
+                .web(WebApplicationType.NONE)
+                .profiles("benchmark")
+                .properties("spring.main.allow-bean-definition-overriding=true")
+                .properties(properties)
+                .logStartupInfo(false)
+                .run();
+    }
+}
@@ -0,0 +1,32 @@
+package com.odhiambopaul.springamazon.benchmark;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.sns.AmazonSNSClient;
+import com.amazonaws.services.sqs.AmazonSQSClient;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+
+/**
+ * Replaces the S3, SQS and SNS clients of {@code AmazonConfig} with in-memory stand-ins. Not a
+ * {@code @Configuration} class, so component scanning never picks it up; it is only passed as a
+ * source by {@link BenchmarkApplication}.
+ */
+public class BenchmarkAwsBeans {
+
+    @Bean
+    public AmazonS3 s3() {
+        return new InMemoryAmazonS3();
+    }
+
+    @Primary
+    @Bean
+    public AmazonSQSClient amazonSQSClient() {
+        return new InMemoryAmazonSQS();
+    }
+
+    @Primary
+    @Bean
+    public AmazonSNSClient amazonSNSClient() {
+        return new InMemoryAmazonSNS();
+    }
+}
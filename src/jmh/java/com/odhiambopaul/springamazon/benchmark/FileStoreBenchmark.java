@@ -0,0 +1,81 @@
+package com.odhiambopaul.springamazon.benchmark;
+
+import com.odhiambopaul.springamazon.domain.ImageContent;
+import com.odhiambopaul.springamazon.domain.UploadResult;
+import com.odhiambopaul.springamazon.service.FileStoreServiceImpl;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Upload, download and streaming through {@link FileStoreServiceImpl} without the caching
+ * decorator. The largest size is above the multipart threshold.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileStoreBenchmark {
+
+    private static final String PATH = "benchmark-bucket/images";
+
+    @Param({"1024", "65536", "1048576", "33554432"})
+    public int size;
+
+    private ConfigurableApplicationContext context;
+    private FileStoreServiceImpl fileStore;
+    private byte[] payload;
+    private String key;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start();
+        fileStore = context.getBean(FileStoreServiceImpl.class);
+        payload = new byte[size];
+        new Random(42).nextBytes(payload);
+        key = "object-" + size;
+        upload();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public UploadResult upload() {
+        return fileStore.upload(PATH, key, "image/png", size, Optional.empty(), new ByteArrayInputStream(payload));
+    }
+
+    @Benchmark
+    public byte[] download() {
+        return fileStore.download(PATH, key);
+    }
+
+    @Benchmark
+    public long stream() throws IOException {
+        try (ImageContent content = fileStore.stream(PATH, key, null, null, null)) {
+            return content.writeTo(NullOutputStream.NULL_OUTPUT_STREAM);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.odhiambopaul.springamazon.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.odhiambopaul.springamazon.config.AmazonConfig;
+import com.odhiambopaul.springamazon.domain.Image;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON serialization of {@link Image} with the application's {@link ObjectMapper}, as used for
+ * responses and outbox payloads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageJsonBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+
+    private ObjectWriter imageWriter;
+    private ObjectWriter pageWriter;
+    private ObjectReader imageReader;
+    private Image image;
+    private List<Image> page;
+    private byte[] imageJson;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        ObjectMapper mapper = new AmazonConfig().objectMapper();
+        imageWriter = mapper.writerFor(Image.class);
+        pageWriter = mapper.writerFor(mapper.getTypeFactory().constructCollectionType(List.class, Image.class));
+        imageReader = mapper.readerFor(Image.class);
+
+        page = new ArrayList<>(PAGE_SIZE);
+        for (long i = 0; i < PAGE_SIZE; i++) {
+            page.add(image(i));
+        }
+        image = page.get(0);
+        imageJson = imageWriter.writeValueAsBytes(image);
+    }
+
+    @Benchmark
+    public byte[] serializeImage() throws JsonProcessingException {
+        return imageWriter.writeValueAsBytes(image);
+    }
+
+    @Benchmark
+    public byte[] serializePage() throws JsonProcessingException {
+        return pageWriter.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public Image deserializeImage() throws Exception {
+        return imageReader.readValue(imageJson);
+    }
+
+    private static Image image(long id) {
+        return Image.builder()
+                .id(id)
+                .description("benchmark image " + id)
+                .imagePath("cloudx-spring-amazon-storage/images")
+                .imageFileName("image-" + id + ".png")
+                .imageExtension("png")
+                .url("https://cloudx-spring-amazon-storage.s3.us-west-1.amazonaws.com/images/image-" + id + ".png")
+                .objectKey(String.format("%064x", id))
+                .imageSize(16384L)
+                .updateDate(LocalDate.of(2021, 7, 1))
+                .eTag("0123456789abcdef0123456789abcdef")
+                .lastModified(Instant.parse("2021-07-01T12:00:00Z"))
+                .imageWidth(1280)
+                .derivatives("160,320,640,1280")
+                .build();
+    }
+}
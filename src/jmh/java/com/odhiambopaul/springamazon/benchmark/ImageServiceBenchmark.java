@@ -0,0 +1,117 @@
+package com.odhiambopaul.springamazon.benchmark;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.odhiambopaul.springamazon.domain.Image;
+import com.odhiambopaul.springamazon.repositories.ImageRepository;
+import com.odhiambopaul.springamazon.service.ImageService;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link ImageService} end to end against the in-memory S3 and H2, with and without the object
+ * cache in front of the file store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageServiceBenchmark {
+
+    private static final int OBJECT_SIZE = 16 * 1024;
+
+    @Param({"100", "10000"})
+    public int images;
+
+    @Param({"true", "false"})
+    public boolean cache;
+
+    private final AtomicLong uploads = new AtomicLong();
+    private ConfigurableApplicationContext context;
+    private ImageService service;
+    private byte[] payload;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start("image.cache.enabled=" + cache);
+        service = context.getBean(ImageService.class);
+        AmazonS3 s3 = context.getBean(AmazonS3.class);
+        String path = context.getEnvironment().getProperty("aws.s3.bucketName") + "/images";
+
+        payload = new byte[OBJECT_SIZE];
+        new Random(42).nextBytes(payload);
+        List<Image> rows = new ArrayList<>(images);
+        for (int i = 0; i < images; i++) {
+            byte[] content = unique(i);
+            String objectKey = DigestUtils.sha256Hex(content);
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentType("image/png");
+            String eTag = s3.putObject(path, objectKey, new ByteArrayInputStream(content), metadata).getETag();
+            rows.add(Image.builder()
+                    .imagePath(path)
+                    .imageFileName("image-" + i + ".png")
+                    .imageExtension("png")
+                    .objectKey(objectKey)
+                    .imageSize((long) content.length)
+                    .eTag(eTag)
+                    .lastModified(Instant.now())
+                    .build());
+        }
+        context.getBean(ImageRepository.class).saveAll(rows);
+        uploads.set(images);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Image> getAllImages() {
+        return service.getAllImages();
+    }
+
+    @Benchmark
+    public byte[] getRandomImage() {
+        return service.getRandomImage();
+    }
+
+    @Benchmark
+    public Image uploadImage() {
+        long n = uploads.getAndIncrement();
+        return service.uploadImage("benchmark",
+                new MockMultipartFile("file", "upload-" + n + ".png", "image/png", unique(n)));
+    }
+
+    private byte[] unique(long n) {
+        // distinct content per image, otherwise uploads are deduplicated by hash
+        byte[] content = payload.clone();
+        ByteBuffer.wrap(content).putLong(n);
+        return content;
+    }
+}
@@ -0,0 +1,248 @@
+package com.odhiambopaul.springamazon.benchmark;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.Headers;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.DeleteObjectRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsResult;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import com.amazonaws.util.IOUtils;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps objects in memory so the file store can be driven without S3. Only the calls the
+ * application makes are implemented. Bucket and key are joined the way S3 resolves the
+ * "bucket/prefix" paths the application passes as bucket names, so single and multi-object
+ * requests address the same objects.
+ */
+public class InMemoryAmazonS3 extends AbstractAmazonS3 {
+
+    private final ConcurrentMap<String, StoredObject> objects = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, MultipartUpload> uploads = new ConcurrentHashMap<>();
+
+    @Override
+    public PutObjectResult putObject(String bucketName, String key, InputStream input, ObjectMetadata metadata) {
+        StoredObject stored = store(bucketName, key, read(input), metadata);
+        PutObjectResult result = new PutObjectResult();
+        result.setETag(stored.metadata.getETag());
+        return result;
+    }
+
+    @Override
+    public PutObjectResult putObject(PutObjectRequest request) {
+        ObjectMetadata metadata = request.getMetadata() == null ? new ObjectMetadata() : request.getMetadata();
+        return putObject(request.getBucketName(), request.getKey(), request.getInputStream(), metadata);
+    }
+
+    @Override
+    public URL getUrl(String bucketName, String key) {
+        try {
+            return new URL("https://s3.amazonaws.com/" + bucketName + "/" + key);
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    @Override
+    public S3Object getObject(String bucketName, String key) {
+        return getObject(new GetObjectRequest(bucketName, key));
+    }
+
+    @Override
+    public S3Object getObject(GetObjectRequest request) {
+        StoredObject stored = objects.get(location(request.getBucketName(), request.getKey()));
+        if (stored == null) {
+            throw notFound(request.getKey());
+        }
+        List<String> matching = request.getMatchingETagConstraints();
+        if (!matching.isEmpty() && matching.stream().noneMatch(eTag -> unquote(eTag).equals(stored.metadata.getETag()))) {
+            // the SDK returns null when a constraint is not met
+            return null;
+        }
+
+        int start = 0;
+        int length = stored.bytes.length;
+        ObjectMetadata metadata = stored.metadata.clone();
+        long[] range = request.getRange();
+        if (range != null) {
+            start = (int) range[0];
+            int end = (int) Math.min(range[1], stored.bytes.length - 1);
+            length = end - start + 1;
+            metadata.setHeader(Headers.CONTENT_RANGE, String.format("bytes %d-%d/%d", start, end, stored.bytes.length));
+        }
+        metadata.setContentLength(length);
+
+        S3Object object = new S3Object();
+        object.setBucketName(request.getBucketName());
+        object.setKey(request.getKey());
+        object.setObjectMetadata(metadata);
+        object.setObjectContent(new S3ObjectInputStream(new ByteArrayInputStream(stored.bytes, start, length), null));
+        return object;
+    }
+
+    @Override
+    public void deleteObject(String bucketName, String key) {
+        objects.remove(location(bucketName, key));
+    }
+
+    @Override
+    public void deleteObject(DeleteObjectRequest request) {
+        deleteObject(request.getBucketName(), request.getKey());
+    }
+
+    @Override
+    public DeleteObjectsResult deleteObjects(DeleteObjectsRequest request) {
+        List<DeleteObjectsResult.DeletedObject> deleted = new ArrayList<>();
+        for (DeleteObjectsRequest.KeyVersion keyVersion : request.getKeys()) {
+            objects.remove(location(request.getBucketName(), keyVersion.getKey()));
+            if (!request.getQuiet()) {
+                DeleteObjectsResult.DeletedObject object = new DeleteObjectsResult.DeletedObject();
+                object.setKey(keyVersion.getKey());
+                deleted.add(object);
+            }
+        }
+        return new DeleteObjectsResult(deleted);
+    }
+
+    @Override
+    public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request) {
+        String uploadId = UUID.randomUUID().toString();
+        ObjectMetadata metadata = request.getObjectMetadata() == null ? new ObjectMetadata() : request.getObjectMetadata();
+        uploads.put(uploadId, new MultipartUpload(metadata));
+        InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+        result.setBucketName(request.getBucketName());
+        result.setKey(request.getKey());
+        result.setUploadId(uploadId);
+        return result;
+    }
+
+    @Override
+    public UploadPartResult uploadPart(UploadPartRequest request) {
+        MultipartUpload upload = uploads.get(request.getUploadId());
+        if (upload == null) {
+            throw notFound(request.getUploadId());
+        }
+        byte[] bytes = read(request.getInputStream());
+        upload.parts.put(request.getPartNumber(), bytes);
+        UploadPartResult result = new UploadPartResult();
+        result.setPartNumber(request.getPartNumber());
+        result.setETag(DigestUtils.md5Hex(bytes));
+        return result;
+    }
+
+    @Override
+    public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) {
+        MultipartUpload upload = uploads.remove(request.getUploadId());
+        if (upload == null) {
+            throw notFound(request.getUploadId());
+        }
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (PartETag part : request.getPartETags()) {
+            byte[] bytes = upload.parts.get(part.getPartNumber());
+            content.write(bytes, 0, bytes.length);
+        }
+        StoredObject stored = store(request.getBucketName(), request.getKey(), content.toByteArray(), upload.metadata);
+        CompleteMultipartUploadResult result = new CompleteMultipartUploadResult();
+        result.setBucketName(request.getBucketName());
+        result.setKey(request.getKey());
+        result.setETag(stored.metadata.getETag() + "-" + request.getPartETags().size());
+        return result;
+    }
+
+    @Override
+    public void abortMultipartUpload(AbortMultipartUploadRequest request) {
+        uploads.remove(request.getUploadId());
+    }
+
+    /**
+     * Spring infers {@code shutdown} as the destroy method of {@code @Bean} clients, the base class
+     * would throw on context close.
+     */
+    @Override
+    public void shutdown() {
+    }
+
+    public int size() {
+        return objects.size();
+    }
+
+    private StoredObject store(String bucketName, String key, byte[] bytes, ObjectMetadata metadata) {
+        ObjectMetadata stored = metadata.clone();
+        stored.setContentLength(bytes.length);
+        stored.setHeader(Headers.ETAG, DigestUtils.md5Hex(bytes));
+        stored.setLastModified(new Date());
+        StoredObject object = new StoredObject(bytes, stored);
+        objects.put(location(bucketName, key), object);
+        return object;
+    }
+
+    private static String location(String bucketName, String key) {
+        return bucketName + "/" + key;
+    }
+
+    private static String unquote(String eTag) {
+        return eTag.startsWith("\"") && eTag.endsWith("\"") ? eTag.substring(1, eTag.length() - 1) : eTag;
+    }
+
+    private static byte[] read(InputStream input) {
+        try (InputStream in = input) {
+            return IOUtils.toByteArray(in);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read the object", e);
+        }
+    }
+
+    private static AmazonServiceException notFound(String key) {
+        AmazonServiceException e = new AmazonServiceException("Not found: " + key);
+        e.setStatusCode(404);
+        e.setErrorCode("NoSuchKey");
+        return e;
+    }
+
+    private static class StoredObject {
+        private final byte[] bytes;
+        private final ObjectMetadata metadata;
+
+        private StoredObject(byte[] bytes, ObjectMetadata metadata) {
+            this.bytes = bytes;
+            this.metadata = metadata;
+        }
+    }
+
+    private static class MultipartUpload {
+        private final ObjectMetadata metadata;
+        private final Map<Integer, byte[]> parts = new ConcurrentHashMap<>();
+
+        private MultipartUpload(ObjectMetadata metadata) {
+            this.metadata = metadata;
+        }
+    }
+}
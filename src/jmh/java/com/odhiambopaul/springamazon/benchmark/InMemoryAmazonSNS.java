@@ -0,0 +1,58 @@
+package com.odhiambopaul.springamazon.benchmark;
+
+import com.amazonaws.services.sns.AmazonSNSClient;
+import com.amazonaws.services.sns.model.ListSubscriptionsByTopicRequest;
+import com.amazonaws.services.sns.model.ListSubscriptionsByTopicResult;
+import com.amazonaws.services.sns.model.PublishRequest;
+import com.amazonaws.services.sns.model.PublishResult;
+import com.amazonaws.services.sns.model.SubscribeRequest;
+import com.amazonaws.services.sns.model.SubscribeResult;
+import com.amazonaws.services.sns.model.Subscription;
+import com.amazonaws.services.sns.model.UnsubscribeRequest;
+import com.amazonaws.services.sns.model.UnsubscribeResult;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the subscriptions of the topic in memory and accepts every publish. Listing returns
+ * everything in a single page.
+ */
+@SuppressWarnings("deprecation")
+public class InMemoryAmazonSNS extends AmazonSNSClient {
+
+    private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+
+    @Override
+    public SubscribeResult subscribe(SubscribeRequest request) {
+        String arn = request.getTopicArn() + ":" + UUID.randomUUID();
+        subscriptions.put(arn, new Subscription()
+                .withSubscriptionArn(arn)
+                .withTopicArn(request.getTopicArn())
+                .withProtocol(request.getProtocol())
+                .withEndpoint(request.getEndpoint()));
+        return new SubscribeResult().withSubscriptionArn(arn);
+    }
+
+    @Override
+    public UnsubscribeResult unsubscribe(UnsubscribeRequest request) {
+        subscriptions.remove(request.getSubscriptionArn());
+        return new UnsubscribeResult();
+    }
+
+    @Override
+    public ListSubscriptionsByTopicResult listSubscriptionsByTopic(ListSubscriptionsByTopicRequest request) {
+        List<Subscription> topic = subscriptions.values().stream()
+                .filter(subscription -> subscription.getTopicArn().equals(request.getTopicArn()))
+                .collect(Collectors.toList());
+        return new ListSubscriptionsByTopicResult().withSubscriptions(topic);
+    }
+
+    @Override
+    public PublishResult publish(PublishRequest request) {
+        return new PublishResult().withMessageId(UUID.randomUUID().toString());
+    }
+}
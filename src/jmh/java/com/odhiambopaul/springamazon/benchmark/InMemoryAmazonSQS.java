@@ -0,0 +1,36 @@
+package com.odhiambopaul.springamazon.benchmark;
+
+import com.amazonaws.services.sqs.AmazonSQSClient;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchResultEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Accepts every message the outbox sends and only counts them.
+ */
+@SuppressWarnings("deprecation")
+public class InMemoryAmazonSQS extends AmazonSQSClient {
+
+    private final AtomicLong sent = new AtomicLong();
+
+    @Override
+    public SendMessageBatchResult sendMessageBatch(SendMessageBatchRequest request) {
+        List<SendMessageBatchResultEntry> successful = new ArrayList<>();
+        request.getEntries().forEach(entry -> successful.add(new SendMessageBatchResultEntry()
+                .withId(entry.getId())
+                .withMessageId(UUID.randomUUID().toString())));
+        sent.addAndGet(successful.size());
+        return new SendMessageBatchResult()
+                .withSuccessful(successful)
+                .withFailed(new ArrayList<>());
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+}
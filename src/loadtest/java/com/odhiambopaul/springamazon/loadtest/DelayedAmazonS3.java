@@ -0,0 +1,36 @@
+package com.odhiambopaul.springamazon.loadtest;
+
+import com.amazonaws.services.s3.AmazonS3;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Puts a {@link Latency} in front of every call of an {@link AmazonS3} that would be a request to
+ * S3. URL building and presigning happen locally in the real client and stay undelayed.
+ */
+final class DelayedAmazonS3 {
+
+    private static final Set<String> LOCAL_METHODS = new HashSet<>(Arrays.asList(
+            "getUrl", "generatePresignedUrl", "getRegion", "getRegionName", "shutdown"));
+
+    private DelayedAmazonS3() {
+    }
+
+    static AmazonS3 wrap(AmazonS3 target, Latency latency) {
+        return (AmazonS3) Proxy.newProxyInstance(AmazonS3.class.getClassLoader(), new Class<?>[]{AmazonS3.class},
+                (proxy, method, args) -> {
+                    if (method.getDeclaringClass() != Object.class && !LOCAL_METHODS.contains(method.getName())) {
+                        latency.pause();
+                    }
+                    try {
+                        return method.invoke(target, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+}
@@ -0,0 +1,47 @@
+package com.odhiambopaul.springamazon.loadtest;
+
+import com.amazonaws.services.sns.model.ListSubscriptionsByTopicRequest;
+import com.amazonaws.services.sns.model.ListSubscriptionsByTopicResult;
+import com.amazonaws.services.sns.model.PublishRequest;
+import com.amazonaws.services.sns.model.PublishResult;
+import com.amazonaws.services.sns.model.SubscribeRequest;
+import com.amazonaws.services.sns.model.SubscribeResult;
+import com.amazonaws.services.sns.model.UnsubscribeRequest;
+import com.amazonaws.services.sns.model.UnsubscribeResult;
+import com.odhiambopaul.springamazon.benchmark.InMemoryAmazonSNS;
+
+/**
+ * The benchmark SNS stand-in with an injected latency per call.
+ */
+public class DelayedAmazonSNS extends InMemoryAmazonSNS {
+
+    private final Latency latency;
+
+    public DelayedAmazonSNS(Latency latency) {
+        this.latency = latency;
+    }
+
+    @Override
+    public SubscribeResult subscribe(SubscribeRequest request) {
+        latency.pause();
+        return super.subscribe(request);
+    }
+
+    @Override
+    public UnsubscribeResult unsubscribe(UnsubscribeRequest request) {
+        latency.pause();
+        return super.unsubscribe(request);
+    }
+
+    @Override
+    public ListSubscriptionsByTopicResult listSubscriptionsByTopic(ListSubscriptionsByTopicRequest request) {
+        latency.pause();
+        return super.listSubscriptionsByTopic(request);
+    }
+
+    @Override
+    public PublishResult publish(PublishRequest request) {
+        latency.pause();
+        return super.publish(request);
+    }
+}
@@ -0,0 +1,23 @@
+package com.odhiambopaul.springamazon.loadtest;
+
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.odhiambopaul.springamazon.benchmark.InMemoryAmazonSQS;
+
+/**
+ * The benchmark SQS stand-in with an injected latency per batch.
+ */
+public class DelayedAmazonSQS extends InMemoryAmazonSQS {
+
+    private final Latency latency;
+
+    public DelayedAmazonSQS(Latency latency) {
+        this.latency = latency;
+    }
+
+    @Override
+    public SendMessageBatchResult sendMessageBatch(SendMessageBatchRequest request) {
+        latency.pause();
+        return super.sendMessageBatch(request);
+    }
+}
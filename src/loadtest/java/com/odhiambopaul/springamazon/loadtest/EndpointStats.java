@@ -0,0 +1,53 @@
+package com.odhiambopaul.springamazon.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram and counters of one endpoint. Latencies are taken from the intended send time
+ * of the open-loop schedule, so queueing behind a slow server is measured instead of omitted.
+ */
+class EndpointStats {
+
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+    private final Histogram latencies = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+
+    void record(long latencyNanos, boolean failed) {
+        latencies.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos), HIGHEST_TRACKABLE_MICROS));
+        requests.increment();
+        if (failed) {
+            errors.increment();
+        }
+    }
+
+    long requests() {
+        return requests.sum();
+    }
+
+    void skip() {
+        skipped.increment();
+    }
+
+    Map<String, Object> summary(double measuredSeconds) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("requests", requests.sum());
+        summary.put("errors", errors.sum());
+        summary.put("skipped", skipped.sum());
+        summary.put("throughputPerSecond", requests.sum() / measuredSeconds);
+        summary.put("meanMs", latencies.getMean() / 1000.0);
+        summary.put("p50Ms", latencies.getValueAtPercentile(50.0) / 1000.0);
+        summary.put("p99Ms", latencies.getValueAtPercentile(99.0) / 1000.0);
+        summary.put("p999Ms", latencies.getValueAtPercentile(99.9) / 1000.0);
+        summary.put("maxMs", latencies.getMaxValue() / 1000.0);
+        return summary;
+    }
+}
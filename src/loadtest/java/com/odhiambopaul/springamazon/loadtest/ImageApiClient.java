@@ -0,0 +1,77 @@
+package com.odhiambopaul.springamazon.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Calls of the image API the load test is made of. Response bodies are read and discarded, so a
+ * download is only complete once every byte arrived.
+ */
+class ImageApiClient {
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
+
+    private final HttpClient client;
+    private final String baseUrl;
+
+    ImageApiClient(int port) {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        this.baseUrl = "http://localhost:" + port + "/api/v1/image";
+    }
+
+    CompletableFuture<HttpResponse<Void>> upload(String fileName, byte[] content) {
+        String boundary = UUID.randomUUID().toString();
+        return send(HttpRequest.newBuilder(URI.create(baseUrl))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(multipart(boundary, fileName, content))));
+    }
+
+    CompletableFuture<HttpResponse<Void>> download(String fileName) {
+        return send(HttpRequest.newBuilder(URI.create(baseUrl + "/" + encode(fileName))).GET());
+    }
+
+    CompletableFuture<HttpResponse<Void>> list() {
+        return send(HttpRequest.newBuilder(URI.create(baseUrl + "/page?limit=100")).GET());
+    }
+
+    CompletableFuture<HttpResponse<Void>> random() {
+        return send(HttpRequest.newBuilder(URI.create(baseUrl + "/random")).GET());
+    }
+
+    CompletableFuture<HttpResponse<Void>> delete(String fileName) {
+        return send(HttpRequest.newBuilder(URI.create(baseUrl + "/" + encode(fileName))).DELETE());
+    }
+
+    private CompletableFuture<HttpResponse<Void>> send(HttpRequest.Builder request) {
+        return client.sendAsync(request.timeout(REQUEST_TIMEOUT).build(), HttpResponse.BodyHandlers.discarding());
+    }
+
+    private static byte[] multipart(String boundary, String fileName, byte[] content) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(content.length + 512);
+        String head = "--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"description\"\r\n\r\n"
+                + "load test\r\n"
+                + "--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"" + fileName + "\"\r\n"
+                + "Content-Type: image/png\r\n\r\n";
+        body.writeBytes(head.getBytes(StandardCharsets.UTF_8));
+        body.writeBytes(content);
+        body.writeBytes(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return body.toByteArray();
+    }
+
+    private static String encode(String fileName) {
+        return URLEncoder.encode(fileName, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+}
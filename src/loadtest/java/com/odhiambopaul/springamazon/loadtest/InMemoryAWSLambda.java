@@ -0,0 +1,34 @@
+package com.odhiambopaul.springamazon.loadtest;
+
+import com.amazonaws.services.lambda.AWSLambdaClient;
+import com.amazonaws.services.lambda.model.InvocationType;
+import com.amazonaws.services.lambda.model.InvokeRequest;
+import com.amazonaws.services.lambda.model.InvokeResult;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Answers every invocation after the injected latency: 202 for {@code Event} invocations, 200 with
+ * an empty JSON object otherwise.
+ */
+@SuppressWarnings("deprecation")
+public class InMemoryAWSLambda extends AWSLambdaClient {
+
+    private final Latency latency;
+
+    public InMemoryAWSLambda(Latency latency) {
+        this.latency = latency;
+    }
+
+    @Override
+    public InvokeResult invoke(InvokeRequest request) {
+        latency.pause();
+        if (InvocationType.Event.toString().equals(request.getInvocationType())) {
+            return new InvokeResult().withStatusCode(202);
+        }
+        return new InvokeResult()
+                .withStatusCode(200)
+                .withPayload(ByteBuffer.wrap("{}".getBytes(StandardCharsets.UTF_8)));
+    }
+}
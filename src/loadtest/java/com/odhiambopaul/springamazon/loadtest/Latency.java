@@ -0,0 +1,35 @@
+package com.odhiambopaul.springamazon.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delay injected into a stand-in call: a fixed part plus a uniformly distributed jitter.
+ */
+public class Latency {
+
+    private final long fixedMillis;
+    private final long jitterMillis;
+
+    public Latency(long fixedMillis, long jitterMillis) {
+        this.fixedMillis = fixedMillis;
+        this.jitterMillis = jitterMillis;
+    }
+
+    public void pause() {
+        long millis = fixedMillis + (jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0);
+        if (millis == 0) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return fixedMillis + "+" + jitterMillis + "ms";
+    }
+}
@@ -0,0 +1,25 @@
+package com.odhiambopaul.springamazon.loadtest;
+
+import com.odhiambopaul.springamazon.SpringAmazonApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Starts the application with its web server on a random port, the delayed AWS stand-ins and the
+ * embedded H2 database of the benchmark profile.
+ */
+final class LoadTestApplication {
+
+    private LoadTestApplication() {
+    }
+
+    static ConfigurableApplicationContext start(String... args) {
+        return new SpringApplicationBuilder(SpringAmazonApplication.class, LoadTestAwsBeans.class)
+                .web(WebApplicationType.SERVLET)
+                .profiles("benchmark", "loadtest")
+                .properties("spring.main.allow-bean-definition-overriding=true")
+                .logStartupInfo(false)
+                .run(args);
+    }
+}
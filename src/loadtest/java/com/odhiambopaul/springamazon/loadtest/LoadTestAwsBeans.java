@@ -0,0 +1,44 @@
+package com.odhiambopaul.springamazon.loadtest;
+
+import com.amazonaws.services.lambda.AWSLambdaClient;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.sns.AmazonSNSClient;
+import com.amazonaws.services.sqs.AmazonSQSClient;
+import com.odhiambopaul.springamazon.benchmark.InMemoryAmazonS3;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+
+/**
+ * Replaces every AWS client of {@code AmazonConfig} with an in-memory stand-in that waits the
+ * configured {@code loadtest.latency.*} before answering. Like the benchmark beans, it is only
+ * passed as a source by {@link LoadTestApplication}.
+ */
+public class LoadTestAwsBeans {
+
+    @Bean
+    public AmazonS3 s3(@Value("${loadtest.latency.s3.fixed-ms}") long fixedMillis,
+                       @Value("${loadtest.latency.s3.jitter-ms}") long jitterMillis) {
+        return DelayedAmazonS3.wrap(new InMemoryAmazonS3(), new Latency(fixedMillis, jitterMillis));
+    }
+
+    @Primary
+    @Bean
+    public AmazonSQSClient amazonSQSClient(@Value("${loadtest.latency.sqs.fixed-ms}") long fixedMillis,
+                                           @Value("${loadtest.latency.sqs.jitter-ms}") long jitterMillis) {
+        return new DelayedAmazonSQS(new Latency(fixedMillis, jitterMillis));
+    }
+
+    @Primary
+    @Bean
+    public AmazonSNSClient amazonSNSClient(@Value("${loadtest.latency.sns.fixed-ms}") long fixedMillis,
+                                           @Value("${loadtest.latency.sns.jitter-ms}") long jitterMillis) {
+        return new DelayedAmazonSNS(new Latency(fixedMillis, jitterMillis));
+    }
+
+    @Bean
+    public AWSLambdaClient awsLambdaClient(@Value("${loadtest.latency.lambda.fixed-ms}") long fixedMillis,
+                                           @Value("${loadtest.latency.lambda.jitter-ms}") long jitterMillis) {
+        return new InMemoryAWSLambda(new Latency(fixedMillis, jitterMillis));
+    }
+}
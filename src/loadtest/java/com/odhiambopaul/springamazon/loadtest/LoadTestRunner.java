@@ -0,0 +1,244 @@
+package com.odhiambopaul.springamazon.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load test of the image API. Boots the application against the delayed AWS stand-ins,
+ * uploads a working set of images, then sends a weighted mix of upload, download, list, random and
+ * delete requests at a fixed rate. Requests are started on schedule whether or not earlier ones
+ * returned, up to {@code loadtest.max-in-flight}. Per endpoint throughput and latency percentiles
+ * of the measured phase are written as JSON to {@code loadtest.output}.
+ *
+ * <p>Settings are Spring properties (see application-loadtest.properties) and can be overridden as
+ * {@code --name=value} arguments.
+ */
+public final class LoadTestRunner {
+
+    enum Operation {
+        UPLOAD, DOWNLOAD, LIST, RANDOM, DELETE
+    }
+
+    private final Environment environment;
+    private final ImageApiClient client;
+    private final double rate;
+    private final long durationSeconds;
+    private final long warmupSeconds;
+    private final int maxInFlight;
+    private final int imageBytes;
+    private final Operation[] schedule;
+    private final Map<Operation, EndpointStats> stats = new EnumMap<>(Operation.class);
+    private final List<String> workingSet = new ArrayList<>();
+    private final Queue<String> deletable = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong uploads = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+
+    private LoadTestRunner(Environment environment, int port) {
+        this.environment = environment;
+        this.client = new ImageApiClient(port);
+        this.rate = environment.getRequiredProperty("loadtest.rate", Double.class);
+        this.durationSeconds = environment.getRequiredProperty("loadtest.duration-seconds", Long.class);
+        this.warmupSeconds = environment.getRequiredProperty("loadtest.warmup-seconds", Long.class);
+        this.maxInFlight = environment.getRequiredProperty("loadtest.max-in-flight", Integer.class);
+        this.imageBytes = environment.getRequiredProperty("loadtest.image-bytes", Integer.class);
+        this.schedule = schedule(environment.getRequiredProperty("loadtest.mix"));
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new EndpointStats());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        ConfigurableApplicationContext context = LoadTestApplication.start(args);
+        try {
+            Environment environment = context.getEnvironment();
+            int port = environment.getRequiredProperty("local.server.port", Integer.class);
+            LoadTestRunner runner = new LoadTestRunner(environment, port);
+            runner.preload(environment.getRequiredProperty("loadtest.preload-images", Integer.class));
+            Map<String, Object> result = runner.run();
+            runner.write(result, Paths.get(environment.getRequiredProperty("loadtest.output")));
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * Expands a mix such as {@code upload:10,download:50} into a table with one slot per weight
+     * unit, so picking a random slot picks operations in proportion to their weights.
+     */
+    private static Operation[] schedule(String mix) {
+        List<Operation> slots = new ArrayList<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split(":");
+            Operation operation = Operation.valueOf(parts[0].trim().toUpperCase());
+            for (int i = 0; i < Integer.parseInt(parts[1].trim()); i++) {
+                slots.add(operation);
+            }
+        }
+        if (slots.isEmpty()) {
+            throw new IllegalStateException("loadtest.mix has no weighted operation");
+        }
+        return slots.toArray(new Operation[0]);
+    }
+
+    private void preload(int images) {
+        Map<String, CompletableFuture<HttpResponse<Void>>> pending = new LinkedHashMap<>();
+        for (int i = 0; i < images; i++) {
+            String name = "preload-" + i + ".png";
+            workingSet.add(name);
+            pending.put(name, client.upload(name, content()));
+            if (pending.size() == 16) {
+                awaitUploads(pending);
+                pending.clear();
+            }
+        }
+        awaitUploads(pending);
+        System.out.printf("Preloaded %d images%n", images);
+    }
+
+    /**
+     * A rejected preload would leave names in the working set that every later read fails on, which
+     * measures error paths instead of the service, so the run stops on the first one.
+     */
+    private static void awaitUploads(Map<String, CompletableFuture<HttpResponse<Void>>> pending) {
+        pending.forEach((name, upload) -> {
+            int status = upload.join().statusCode();
+            if (status >= 400) {
+                throw new IllegalStateException(String.format("Preload of %s failed with status %d", name, status));
+            }
+        });
+    }
+
+    private Map<String, Object> run() {
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        long sent = 0;
+
+        for (long intended = start; intended < end; intended = start + ++sent * interval) {
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            if (inFlight.get() >= maxInFlight) {
+                dropped.increment();
+                continue;
+            }
+            Operation operation = schedule[ThreadLocalRandom.current().nextInt(schedule.length)];
+            send(operation, intended, intended >= measureFrom);
+        }
+        while (inFlight.get() > 0) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+
+        double measuredSeconds = durationSeconds;
+        Map<String, Object> endpoints = new LinkedHashMap<>();
+        stats.forEach((operation, endpoint) -> endpoints.put(operation.name().toLowerCase(),
+                endpoint.summary(measuredSeconds)));
+        long completed = stats.values().stream().mapToLong(EndpointStats::requests).sum();
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("timestamp", Instant.now().toString());
+        result.put("settings", settings());
+        result.put("targetRatePerSecond", rate);
+        result.put("achievedRatePerSecond", completed / measuredSeconds);
+        result.put("dropped", dropped.sum());
+        result.put("endpoints", endpoints);
+        return result;
+    }
+
+    private void send(Operation operation, long intended, boolean measured) {
+        CompletableFuture<HttpResponse<Void>> response;
+        String uploaded = null;
+        inFlight.incrementAndGet();
+        switch (operation) {
+            case UPLOAD:
+                uploaded = "load-" + uploads.incrementAndGet() + ".png";
+                response = client.upload(uploaded, content());
+                break;
+            case DOWNLOAD:
+                response = client.download(workingSet.get(ThreadLocalRandom.current().nextInt(workingSet.size())));
+                break;
+            case LIST:
+                response = client.list();
+                break;
+            case RANDOM:
+                response = client.random();
+                break;
+            default:
+                String name = deletable.poll();
+                if (name == null) {
+                    // nothing uploaded during the run is left to delete
+                    stats.get(operation).skip();
+                    inFlight.decrementAndGet();
+                    return;
+                }
+                response = client.delete(name);
+                break;
+        }
+        String fileName = uploaded;
+        response.whenComplete((r, e) -> {
+            boolean failed = e != null || r.statusCode() >= 400;
+            if (measured) {
+                stats.get(operation).record(System.nanoTime() - intended, failed);
+            }
+            if (!failed && fileName != null) {
+                deletable.add(fileName);
+            }
+            inFlight.decrementAndGet();
+        });
+    }
+
+    private byte[] content() {
+        byte[] content = new byte[imageBytes];
+        ThreadLocalRandom.current().nextBytes(content);
+        return content;
+    }
+
+    private Map<String, Object> settings() {
+        Map<String, Object> settings = new LinkedHashMap<>();
+        for (String name : new String[]{"loadtest.rate", "loadtest.duration-seconds", "loadtest.warmup-seconds",
+                "loadtest.mix", "loadtest.preload-images", "loadtest.image-bytes", "loadtest.max-in-flight",
+                "loadtest.latency.s3.fixed-ms", "loadtest.latency.s3.jitter-ms",
+                "loadtest.latency.sqs.fixed-ms", "loadtest.latency.sqs.jitter-ms",
+                "loadtest.latency.sns.fixed-ms", "loadtest.latency.sns.jitter-ms",
+                "loadtest.latency.lambda.fixed-ms", "loadtest.latency.lambda.jitter-ms"}) {
+            settings.put(name, environment.getProperty(name));
+        }
+        return settings;
+    }
+
+    private void write(Map<String, Object> result, Path output) throws IOException {
+        ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+        mapper.writeValue(output.toFile(), result);
+        System.out.println(mapper.writeValueAsString(result.get("endpoints")));
+        System.out.printf("Results written to %s%n", output.toAbsolutePath());
+    }
+}
@@ -2,10 +2,12 @@ package com.odhiambopaul.springamazon;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @EnableScheduling
+@EnableCaching
 public class SpringAmazonApplication {
     public static void main(String[] args) {
         SpringApplication.run(SpringAmazonApplication.class, args);
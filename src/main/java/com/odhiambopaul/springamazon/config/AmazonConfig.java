@@ -12,6 +12,8 @@ import com.amazonaws.services.sns.AmazonSNSClientBuilder;
 import com.amazonaws.services.sqs.AmazonSQSClient;
 import com.amazonaws.services.sqs.AmazonSQSClientBuilder;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -31,60 +33,67 @@ public class AmazonConfig {
 
     @Bean
     @Profile("!local")
-    public AmazonS3 s3() {
+    public AmazonS3 s3(AwsMetricsRequestHandler metricsHandler) {
         return AmazonS3ClientBuilder
                 .standard()
                 .withRegion(region)
+                .withRequestHandlers(metricsHandler)
                 .build();
     }
 
     @Bean
     @Profile("local")
-    public AmazonS3 s3local() {
+    public AmazonS3 s3local(AwsMetricsRequestHandler metricsHandler) {
         AWSCredentials awsCredentials =
                 new BasicAWSCredentials(accessKeyId, secretAccessKey);
         return AmazonS3ClientBuilder
                 .standard()
                 .withRegion(region)
                 .withCredentials(new AWSStaticCredentialsProvider(awsCredentials))
+                .withRequestHandlers(metricsHandler)
                 .build();
 
     }
 
     @Primary
     @Bean
-    public AmazonSNSClient amazonSNSClient() {
+    public AmazonSNSClient amazonSNSClient(AwsMetricsRequestHandler metricsHandler) {
         return (AmazonSNSClient) AmazonSNSClientBuilder
                 .standard()
                 .withRegion(region)
                 .withCredentials(new AWSStaticCredentialsProvider(
                         new BasicAWSCredentials(accessKeyId, secretAccessKey)))
+                .withRequestHandlers(metricsHandler)
                 .build();
     }
 
     @Primary
     @Bean
-    public AmazonSQSClient amazonSQSClient() {
+    public AmazonSQSClient amazonSQSClient(AwsMetricsRequestHandler metricsHandler) {
         return (AmazonSQSClient) AmazonSQSClientBuilder
                 .standard()
                 .withRegion(region)
                 .withCredentials(new AWSStaticCredentialsProvider(
                         new BasicAWSCredentials(accessKeyId, secretAccessKey)))
+                .withRequestHandlers(metricsHandler)
                 .build();
     }
 
     @Bean
-    public AWSLambdaClient awsLambdaClient() {
+    public AWSLambdaClient awsLambdaClient(AwsMetricsRequestHandler metricsHandler) {
         return (AWSLambdaClient) AWSLambdaClientBuilder
             .standard()
             .withRegion(region)
             .withCredentials(new AWSStaticCredentialsProvider(
                 new BasicAWSCredentials(accessKeyId, secretAccessKey)))
+            .withRequestHandlers(metricsHandler)
             .build();
     }
 
     @Bean
     public ObjectMapper objectMapper() {
-        return new ObjectMapper();
+        return new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
     }
 }
@@ -0,0 +1,107 @@
+package com.odhiambopaul.springamazon.config;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.handlers.HandlerContextKey;
+import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times every call made through the AWS clients, retries included, as {@code aws.calls} tagged by
+ * service, operation and outcome, and records the object bytes sent to and received from S3 as
+ * {@code aws.s3.transferred}.
+ */
+@Component
+@RequiredArgsConstructor
+public class AwsMetricsRequestHandler extends RequestHandler2 {
+
+    private static final HandlerContextKey<Long> STARTED = new HandlerContextKey<>("metrics.started");
+
+    private final MeterRegistry registry;
+
+    @Override
+    public void beforeRequest(Request<?> request) {
+        request.addHandlerContext(STARTED, System.nanoTime());
+    }
+
+    @Override
+    public void afterResponse(Request<?> request, Response<?> response) {
+        record(request, "SUCCESS");
+        Object original = request.getOriginalRequest();
+        if (original instanceof PutObjectRequest && ((PutObjectRequest) original).getMetadata() != null) {
+            transferred("upload", ((PutObjectRequest) original).getMetadata().getContentLength());
+        } else if (original instanceof UploadPartRequest) {
+            transferred("upload", ((UploadPartRequest) original).getPartSize());
+        } else if (response != null && response.getAwsResponse() instanceof S3Object) {
+            transferred("download", ((S3Object) response.getAwsResponse()).getObjectMetadata().getContentLength());
+        }
+    }
+
+    @Override
+    public void afterError(Request<?> request, Response<?> response, Exception e) {
+        record(request, outcome(e));
+    }
+
+    private void record(Request<?> request, String outcome) {
+        Long started = request.getHandlerContext(STARTED);
+        if (started == null) {
+            return;
+        }
+        Timer.builder("aws.calls")
+                .description("Latency of AWS SDK calls")
+                .tag("service", service(request))
+                .tag("operation", operation(request))
+                .tag("outcome", outcome)
+                .register(registry)
+                .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+    }
+
+    private void transferred(String direction, long bytes) {
+        if (bytes <= 0) {
+            return;
+        }
+        DistributionSummary.builder("aws.s3.transferred")
+                .description("Object bytes transferred to and from S3")
+                .baseUnit("bytes")
+                .tag("direction", direction)
+                .register(registry)
+                .record(bytes);
+    }
+
+    private static String service(Request<?> request) {
+        String serviceId = request.getHandlerContext(HandlerContextKey.SERVICE_ID);
+        return serviceId != null ? serviceId : request.getServiceName();
+    }
+
+    private static String operation(Request<?> request) {
+        String operation = request.getHandlerContext(HandlerContextKey.OPERATION_NAME);
+        if (operation != null) {
+            return operation;
+        }
+        String type = request.getOriginalRequest().getClass().getSimpleName();
+        return type.endsWith("Request") ? type.substring(0, type.length() - "Request".length()) : type;
+    }
+
+    private static String outcome(Exception e) {
+        if (e instanceof AmazonServiceException) {
+            int status = ((AmazonServiceException) e).getStatusCode();
+            if (status >= 400 && status < 500) {
+                return "CLIENT_ERROR";
+            }
+            if (status >= 500) {
+                return "SERVER_ERROR";
+            }
+        }
+        return "UNKNOWN";
+    }
+}
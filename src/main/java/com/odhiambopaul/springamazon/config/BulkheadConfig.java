@@ -0,0 +1,43 @@
+package com.odhiambopaul.springamazon.config;
+
+import com.odhiambopaul.springamazon.service.Bulkhead;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class BulkheadConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    public Bulkhead s3Bulkhead(@Value("${bulkhead.s3.threads}") int threads,
+                               @Value("${bulkhead.s3.queue-capacity}") int queueCapacity,
+                               @Value("${bulkhead.s3.timeout-ms}") long timeoutMillis,
+                               MeterRegistry registry) {
+        return new Bulkhead("s3", threads, queueCapacity, timeoutMillis, registry);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public Bulkhead snsBulkhead(@Value("${bulkhead.sns.threads}") int threads,
+                                @Value("${bulkhead.sns.queue-capacity}") int queueCapacity,
+                                @Value("${bulkhead.sns.timeout-ms}") long timeoutMillis,
+                                MeterRegistry registry) {
+        return new Bulkhead("sns", threads, queueCapacity, timeoutMillis, registry);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public Bulkhead sqsBulkhead(@Value("${bulkhead.sqs.threads}") int threads,
+                                @Value("${bulkhead.sqs.queue-capacity}") int queueCapacity,
+                                @Value("${bulkhead.sqs.timeout-ms}") long timeoutMillis,
+                                MeterRegistry registry) {
+        return new Bulkhead("sqs", threads, queueCapacity, timeoutMillis, registry);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public Bulkhead lambdaBulkhead(@Value("${bulkhead.lambda.threads}") int threads,
+                                   @Value("${bulkhead.lambda.queue-capacity}") int queueCapacity,
+                                   @Value("${bulkhead.lambda.timeout-ms}") long timeoutMillis,
+                                   MeterRegistry registry) {
+        return new Bulkhead("lambda", threads, queueCapacity, timeoutMillis, registry);
+    }
+}
@@ -0,0 +1,19 @@
+package com.odhiambopaul.springamazon.config;
+
+import org.hibernate.dialect.MySQL8Dialect;
+import org.hibernate.dialect.function.SQLFunctionTemplate;
+import org.hibernate.type.StandardBasicTypes;
+
+/**
+ * MySQL 8 dialect with {@code match_against(column, terms)}, a boolean mode full-text match usable
+ * from JPQL and criteria queries. The column needs a FULLTEXT index, see {@code fulltext-mysql.sql}.
+ */
+public class MySqlFullTextDialect extends MySQL8Dialect {
+
+    public static final String MATCH_AGAINST = "match_against";
+
+    public MySqlFullTextDialect() {
+        registerFunction(MATCH_AGAINST,
+                new SQLFunctionTemplate(StandardBasicTypes.DOUBLE, "match(?1) against(?2 in boolean mode)"));
+    }
+}
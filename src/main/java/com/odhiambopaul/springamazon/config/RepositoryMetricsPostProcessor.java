@@ -0,0 +1,59 @@
+package com.odhiambopaul.springamazon.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.Ordered;
+import org.springframework.data.repository.Repository;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times every repository call as {@code repository.calls} tagged by repository, method and
+ * outcome. The repositories are wrapped last, so cached lookups are timed as the callers see them.
+ */
+@Component
+public class RepositoryMetricsPostProcessor implements BeanPostProcessor, Ordered {
+
+    private final ObjectProvider<MeterRegistry> registry;
+
+    public RepositoryMetricsPostProcessor(ObjectProvider<MeterRegistry> registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof Repository)) {
+            return bean;
+        }
+        ProxyFactory factory = new ProxyFactory(bean);
+        factory.addAdvice((MethodInterceptor) invocation -> {
+            long started = System.nanoTime();
+            String outcome = "SUCCESS";
+            try {
+                return invocation.proceed();
+            } catch (Throwable e) {
+                outcome = "ERROR";
+                throw e;
+            } finally {
+                Timer.builder("repository.calls")
+                        .description("Latency of repository calls")
+                        .tag("repository", beanName)
+                        .tag("method", invocation.getMethod().getName())
+                        .tag("outcome", outcome)
+                        .register(registry.getObject())
+                        .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            }
+        });
+        return factory.getProxy();
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE;
+    }
+}
@@ -0,0 +1,22 @@
+package com.odhiambopaul.springamazon.controllers;
+
+import com.odhiambopaul.springamazon.service.BulkheadException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+@RestControllerAdvice
+@Slf4j
+public class BulkheadExceptionHandler {
+
+  @ExceptionHandler(BulkheadException.class)
+  public ResponseEntity<String> handleBulkhead(BulkheadException e) {
+    log.warn("Shedding request, {}", e.getMessage());
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+        .header(HttpHeaders.RETRY_AFTER, "1")
+        .body(e.getMessage());
+  }
+}
@@ -0,0 +1,63 @@
+package com.odhiambopaul.springamazon.controllers;
+
+import com.odhiambopaul.springamazon.domain.DirectUpload;
+import com.odhiambopaul.springamazon.domain.Image;
+import com.odhiambopaul.springamazon.service.DirectTransferService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.Duration;
+
+@RestController
+@RequestMapping("api/v1/image")
+@RequiredArgsConstructor
+@Profile("!filesystem")
+@Slf4j
+public class DirectTransferController {
+
+  private final DirectTransferService service;
+
+  @PostMapping("/uploads")
+  public ResponseEntity<DirectUpload> createUpload(@RequestParam(name = "contentType") String contentType) {
+    log.info("Controller request received - createUpload - {}", contentType);
+    return new ResponseEntity<>(service.createUpload(contentType), HttpStatus.CREATED);
+  }
+
+  @PostMapping("/uploads/{key}/complete")
+  public ResponseEntity<Image> completeUpload(@PathVariable("key") String key,
+      @RequestParam(name = "fileName") String fileName,
+      @RequestParam(name = "description", required = false) String description) {
+    log.info("Controller request received - completeUpload - {}", fileName);
+    Image image = service.completeUpload(key, fileName, description);
+    ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+    if (image.getETag() != null) {
+      builder.eTag(image.getETag());
+    }
+    return builder.body(image);
+  }
+
+  @GetMapping("/{name}/redirect")
+  public ResponseEntity<Void> redirectToImage(@PathVariable("name") String name,
+      @RequestParam(name = "width", required = false) Integer width) throws URISyntaxException {
+    log.info("Controller request received - redirectToImage - {}", name);
+    URI location = service.presignDownload(name, width).toURI();
+    // the redirect must not outlive the signature it points to
+    return ResponseEntity.status(HttpStatus.FOUND)
+        .location(location)
+        .cacheControl(CacheControl.maxAge(Duration.ofSeconds(service.getExpirySeconds() / 2)).cachePrivate())
+        .build();
+  }
+
+}
@@ -2,10 +2,21 @@ package com.odhiambopaul.springamazon.controllers;
 
 import com.amazonaws.services.sns.model.SubscribeResult;
 import com.amazonaws.services.sns.model.UnsubscribeResult;
+import com.odhiambopaul.springamazon.domain.BatchUploadResult;
+import com.odhiambopaul.springamazon.domain.BulkDeleteRequest;
+import com.odhiambopaul.springamazon.domain.BulkDeleteResult;
 import com.odhiambopaul.springamazon.domain.Image;
+import com.odhiambopaul.springamazon.domain.ImageContent;
+import com.odhiambopaul.springamazon.domain.ImagePage;
+import com.odhiambopaul.springamazon.domain.ImageSearchRequest;
+import com.odhiambopaul.springamazon.domain.NotifyTicket;
 import com.odhiambopaul.springamazon.service.ImageService;
-import lombok.AllArgsConstructor;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -14,21 +25,41 @@ import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("api/v1/image")
-@AllArgsConstructor
+@RequiredArgsConstructor
 @CrossOrigin("*")
 @Slf4j
 public class ImageController {
 
-  ImageService service;
+  private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+  private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+  private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+  private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+  private final ImageService service;
+
+  @Value("${image.download.cache-max-age-seconds}")
+  private long cacheMaxAgeSeconds;
 
   @GetMapping
   public ResponseEntity<List<Image>> getTodos() {
@@ -36,16 +67,66 @@ public class ImageController {
     return new ResponseEntity<>(service.getAllImages(), HttpStatus.OK);
   }
 
+  @GetMapping(value = "/page")
+  public ResponseEntity<ImagePage> getImagePage(
+      @RequestParam(name = "after", required = false) Long after,
+      @RequestParam(name = "limit", defaultValue = "100") int limit) {
+    log.info("Controller request received - getImagePage - {}", after);
+    return new ResponseEntity<>(service.getImagePage(after, limit), HttpStatus.OK);
+  }
+
+  @GetMapping(value = "/search")
+  public ResponseEntity<ImagePage> searchImages(ImageSearchRequest request,
+      @RequestParam(name = "after", required = false) Long after,
+      @RequestParam(name = "afterKey", required = false) String afterKey,
+      @RequestParam(name = "limit", defaultValue = "100") int limit) {
+    log.info("Controller request received - searchImages - {}", request);
+    return new ResponseEntity<>(service.searchImages(request, after, afterKey, limit), HttpStatus.OK);
+  }
+
+  @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public ResponseEntity<StreamingResponseBody> exportImages() {
+    log.info("Controller request received - exportImages");
+    return ResponseEntity.ok()
+        .contentType(MediaType.APPLICATION_NDJSON)
+        .body(service::exportImages);
+  }
+
   @GetMapping(value = "/{name}")
-  public byte[] downloadTodoImage(@PathVariable("name") String name) {
+  public CompletableFuture<ResponseEntity<StreamingResponseBody>> downloadTodoImage(
+      @PathVariable("name") String name,
+      @RequestParam(name = "width", required = false) Integer width,
+      @RequestHeader(name = HttpHeaders.RANGE, required = false) String range,
+      @RequestHeader(name = HttpHeaders.IF_RANGE, required = false) String ifRange,
+      WebRequest webRequest) {
     log.info("Controller request received - downloadImageByName - {}", name);
-    return service.downloadImageByName(name);
+    Image image = service.getImageByName(name);
+    String eTag = service.getImageETag(image, width);
+    long lastModified = lastModified(image);
+    if (webRequest.checkNotModified(eTag, lastModified)) {
+      return CompletableFuture.completedFuture(
+          ResponseEntity.status(HttpStatus.NOT_MODIFIED).cacheControl(imageCacheControl()).build());
+    }
+    HttpRange httpRange = singleRange(range);
+    if (ifRange != null && !ifRange.startsWith("\"") && !ifRange.startsWith("W/")) {
+      // the date was issued from the image row, so it cannot be checked against the stored object
+      httpRange = ifRangeDateMatches(ifRange, lastModified) ? httpRange : null;
+      ifRange = null;
+    }
+    return service.streamImageByNameAsync(name, width, httpRange, ifRange)
+        .thenApply(content -> toStreamingResponse(content, imageCacheControl(), eTag, lastModified));
   }
 
   @GetMapping(value = "/random")
-  public byte[] getRandomImage() {
+  public CompletableFuture<ResponseEntity<StreamingResponseBody>> getRandomImage(HttpServletRequest request) {
     log.info("Controller request received - getRandomImage");
-    return service.getRandomImage();
+    // a completed future runs this on the request thread, where sendfile is still possible
+    return service.streamRandomImageAsync().thenApply(content -> {
+      if (sendfile(request, content)) {
+        return responseHeaders(content, CacheControl.noStore(), null, -1).build();
+      }
+      return toStreamingResponse(content, CacheControl.noStore(), null, -1);
+    });
   }
 
   @PostMapping(
@@ -53,35 +134,172 @@ public class ImageController {
       consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
       produces = MediaType.APPLICATION_JSON_VALUE
   )
-  public ResponseEntity<Image> saveTodo(
+  public CompletableFuture<ResponseEntity<Image>> saveTodo(
       @RequestParam(name = "description", required = false) String description,
       @RequestParam("file") MultipartFile file) {
     log.info("Controller request received - uploadImage - {}", file.getOriginalFilename());
-    return new ResponseEntity<>(service.uploadImage(description, file), HttpStatus.OK);
+    return service.uploadImageAsync(description, file)
+        .thenApply(image -> {
+          ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+          if (image.getETag() != null) {
+            builder.eTag(image.getETag());
+          }
+          if (image.getLastModified() != null) {
+            builder.lastModified(image.getLastModified());
+          }
+          return builder.body(image);
+        });
+  }
+
+  @PostMapping(
+      path = "/batch",
+      consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+      produces = MediaType.APPLICATION_JSON_VALUE
+  )
+  public CompletableFuture<ResponseEntity<List<BatchUploadResult>>> saveTodos(
+      @RequestParam(name = "description", required = false) String description,
+      @RequestParam("files") List<MultipartFile> files) {
+    log.info("Controller request received - uploadImages - {}", files.size());
+    return service.uploadImagesAsync(description, files)
+        .thenApply(results -> {
+          boolean failed = results.stream().anyMatch(r -> r.getStatus() == BatchUploadResult.Status.FAILED);
+          return new ResponseEntity<>(results, failed ? HttpStatus.MULTI_STATUS : HttpStatus.OK);
+        });
   }
 
   @DeleteMapping(value = "/{name}")
-  public ResponseEntity<String> deleteTodoImage(@PathVariable("name") String name) {
+  public CompletableFuture<ResponseEntity<String>> deleteTodoImage(@PathVariable("name") String name) {
     log.info("Controller request received - deleteImageByName - {}", name);
-    Long result = service.deleteImageByName(name);
-    return new ResponseEntity<>(String.format("Image '%s' was successfully deleted. Deleted: %d", name, result), HttpStatus.OK);
+    return service.deleteImageByNameAsync(name)
+        .thenApply(result -> new ResponseEntity<>(
+            String.format("Image '%s' was successfully deleted. Deleted: %d", name, result), HttpStatus.OK));
+  }
+
+  @PostMapping(
+      path = "/delete",
+      consumes = MediaType.APPLICATION_JSON_VALUE,
+      produces = MediaType.APPLICATION_JSON_VALUE
+  )
+  public ResponseEntity<BulkDeleteResult> deleteTodoImages(@RequestBody BulkDeleteRequest request) {
+    log.info("Controller request received - deleteImages - {} names", request.getNames() == null ? 0 : request.getNames().size());
+    BulkDeleteResult result = service.deleteImages(request);
+    return new ResponseEntity<>(result, result.isPartial() ? HttpStatus.MULTI_STATUS : HttpStatus.OK);
   }
 
   @PostMapping("/email")
-  public ResponseEntity<SubscribeResult> subscribeEmail(@RequestParam(name = "email") String email) {
+  public CompletableFuture<ResponseEntity<SubscribeResult>> subscribeEmail(@RequestParam(name = "email") String email) {
     log.info("Controller request received - subscribeEmail - {}", email);
-    return new ResponseEntity<>(service.subscribeEmail(email), HttpStatus.OK);
+    return service.subscribeEmailAsync(email)
+        .thenApply(result -> new ResponseEntity<>(result, HttpStatus.OK));
   }
 
   @DeleteMapping("/email")
-  public ResponseEntity<UnsubscribeResult> unsubscribeEmail(@RequestParam(name = "email") String email) {
+  public CompletableFuture<ResponseEntity<UnsubscribeResult>> unsubscribeEmail(
+      @RequestParam(name = "email") String email) {
     log.info("Controller request received - unsubscribeEmail - {}", email);
-    return new ResponseEntity<>(service.unsubscribeEmail(email), HttpStatus.OK);
+    return service.unsubscribeEmailAsync(email)
+        .thenApply(result -> new ResponseEntity<>(result, HttpStatus.OK));
   }
 
   @PostMapping("/notify")
-  public ResponseEntity<String> triggerLambda() {
+  public CompletableFuture<ResponseEntity<String>> triggerLambda() {
     log.info("Controller request received - triggerLambda");
-    return new ResponseEntity<>(service.triggerLambda(), HttpStatus.OK);
+    return service.triggerLambdaAsync()
+        .thenApply(result -> new ResponseEntity<>(result, HttpStatus.OK));
+  }
+
+  @PostMapping("/notify/events")
+  public ResponseEntity<NotifyTicket> triggerLambdaEvent(@RequestBody(required = false) Map<String, Object> detail) {
+    log.info("Controller request received - triggerLambdaEvent");
+    return new ResponseEntity<>(service.triggerLambdaEvent(detail), HttpStatus.ACCEPTED);
+  }
+
+  @GetMapping("/notify/{ticket}")
+  public ResponseEntity<NotifyTicket> getNotifyTicket(@PathVariable String ticket) {
+    return service.getNotifyTicket(ticket)
+        .map(result -> new ResponseEntity<>(result, HttpStatus.OK))
+        .orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
+  }
+
+  private static HttpRange singleRange(String header) {
+    if (header == null) {
+      return null;
+    }
+    try {
+      List<HttpRange> ranges = HttpRange.parseRanges(header);
+      // multipart/byteranges responses are not supported, the full image is sent instead
+      return ranges.size() == 1 ? ranges.get(0) : null;
+    } catch (IllegalArgumentException e) {
+      log.warn("Ignoring malformed Range header, {}", header);
+      return null;
+    }
+  }
+
+  private CacheControl imageCacheControl() {
+    return CacheControl.maxAge(Duration.ofSeconds(cacheMaxAgeSeconds)).cachePublic();
+  }
+
+  private static boolean ifRangeDateMatches(String ifRange, long lastModified) {
+    try {
+      ZonedDateTime date = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME);
+      return lastModified >= 0 && date.toEpochSecond() == lastModified / 1000;
+    } catch (DateTimeParseException e) {
+      return false;
+    }
+  }
+
+  private static long lastModified(Image image) {
+    return image.getLastModified() == null ? -1 : image.getLastModified().toEpochMilli();
+  }
+
+  /**
+   * Hands content stored in a local file to Tomcat's sendfile, which writes it to the socket without
+   * copying it through the JVM. Only possible while the original dispatch is running, asynchronous
+   * responses stream the file through {@link ImageContent#writeTo} instead.
+   */
+  private static boolean sendfile(HttpServletRequest request, ImageContent content) {
+    if (content.getFile() == null
+        || request.getDispatcherType() != DispatcherType.REQUEST
+        || !Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+      return false;
+    }
+    request.setAttribute(SENDFILE_FILENAME, content.getFile().toAbsolutePath().toString());
+    request.setAttribute(SENDFILE_START, content.getFilePosition());
+    request.setAttribute(SENDFILE_END, content.getFilePosition() + content.getContentLength());
+    return true;
+  }
+
+  private static ResponseEntity<StreamingResponseBody> toStreamingResponse(ImageContent content,
+      CacheControl cacheControl, String eTag, long lastModified) {
+    return responseHeaders(content, cacheControl, eTag, lastModified).body(content::writeTo);
+  }
+
+  /**
+   * {@code eTag} and {@code lastModified} (epoch millis, -1 if unset) override the stored object's
+   * validators, so a 200 carries the same values later conditional requests are checked against.
+   */
+  private static ResponseEntity.BodyBuilder responseHeaders(ImageContent content, CacheControl cacheControl,
+      String eTag, long lastModified) {
+    ResponseEntity.BodyBuilder builder = ResponseEntity
+        .status(content.isPartial() ? HttpStatus.PARTIAL_CONTENT : HttpStatus.OK)
+        .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+        .cacheControl(cacheControl)
+        .contentLength(content.getContentLength());
+    if (content.getContentType() != null) {
+      builder.contentType(MediaType.parseMediaType(content.getContentType()));
+    }
+    if (eTag != null || content.getETag() != null) {
+      builder.eTag(eTag != null ? eTag : content.getETag());
+    }
+    if (lastModified >= 0) {
+      builder.lastModified(lastModified);
+    } else if (content.getLastModified() != null) {
+      builder.lastModified(content.getLastModified().getTime());
+    }
+    if (content.isPartial()) {
+      builder.header(HttpHeaders.CONTENT_RANGE, String.format("bytes %d-%d/%d",
+          content.getRangeStart(), content.getRangeEnd(), content.getInstanceLength()));
+    }
+    return builder;
   }
 }
\ No newline at end of file
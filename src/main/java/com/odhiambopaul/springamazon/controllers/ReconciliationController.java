@@ -0,0 +1,35 @@
+package com.odhiambopaul.springamazon.controllers;
+
+import com.odhiambopaul.springamazon.domain.ReconciliationResult;
+import com.odhiambopaul.springamazon.service.ReconciliationService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.concurrent.CompletableFuture;
+
+@RestController
+@RequestMapping("api/v1/image")
+@RequiredArgsConstructor
+@Profile("!filesystem")
+@Slf4j
+public class ReconciliationController {
+
+  private final ReconciliationService service;
+
+  @PostMapping("/reconcile")
+  public CompletableFuture<ResponseEntity<ReconciliationResult>> reconcile(
+      @RequestParam(name = "mode", defaultValue = "REPORT") ReconciliationResult.Mode mode) {
+    log.info("Controller request received - reconcile - {}", mode);
+    return service.reconcile(mode)
+        .thenApply(result -> new ResponseEntity<>(result,
+            result.getFailedPartitions().isEmpty() ? HttpStatus.OK : HttpStatus.MULTI_STATUS));
+  }
+
+}
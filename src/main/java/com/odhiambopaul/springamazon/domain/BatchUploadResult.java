@@ -0,0 +1,21 @@
+package com.odhiambopaul.springamazon.domain;
+
+import lombok.Builder;
+import lombok.Getter;
+
+@Getter
+@Builder
+public class BatchUploadResult {
+
+  private final String fileName;
+  private final Status status;
+  private final Image image;
+  private final String error;
+
+  public enum Status {
+    UPLOADED,
+    DEDUPLICATED,
+    FAILED
+  }
+
+}
@@ -0,0 +1,24 @@
+package com.odhiambopaul.springamazon.domain;
+
+import java.time.LocalDate;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Selects the images of a bulk delete, either by name or by filter. Filter fields left empty are
+ * not applied, but at least one of them has to be set.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class BulkDeleteRequest {
+
+  private List<String> names;
+  private String extension;
+  private LocalDate updatedBefore;
+
+}
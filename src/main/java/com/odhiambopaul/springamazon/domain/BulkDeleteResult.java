@@ -0,0 +1,20 @@
+package com.odhiambopaul.springamazon.domain;
+
+import java.util.List;
+import lombok.Builder;
+import lombok.Getter;
+
+@Getter
+@Builder
+public class BulkDeleteResult {
+
+  private final long deleted;
+  private final List<String> notFound;
+  private final List<String> failed;
+  private final List<String> orphanedObjects;
+
+  public boolean isPartial() {
+    return !failed.isEmpty() || !orphanedObjects.isEmpty();
+  }
+
+}
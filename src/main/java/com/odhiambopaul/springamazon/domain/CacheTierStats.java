@@ -0,0 +1,17 @@
+package com.odhiambopaul.springamazon.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class CacheTierStats {
+
+  private final String tier;
+  private final long hits;
+  private final long misses;
+  private final long evictions;
+  private final long entries;
+  private final long bytes;
+
+}
@@ -0,0 +1,26 @@
+package com.odhiambopaul.springamazon.domain;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity
+public class ContentObject {
+
+  @Id
+  private String objectKey;
+  private String imagePath;
+  private String url;
+  private String eTag;
+  private String contentType;
+  private Long objectSize;
+  private int refCount;
+
+}
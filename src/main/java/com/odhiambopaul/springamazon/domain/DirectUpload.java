@@ -0,0 +1,18 @@
+package com.odhiambopaul.springamazon.domain;
+
+import java.time.Instant;
+import java.util.Map;
+import lombok.Builder;
+import lombok.Getter;
+
+@Getter
+@Builder
+public class DirectUpload {
+
+  private final String objectKey;
+  private final String url;
+  private final String method;
+  private final Map<String, String> headers;
+  private final Instant expiresAt;
+
+}
@@ -1,9 +1,14 @@
 package com.odhiambopaul.springamazon.domain;
 
+import java.time.Instant;
+import java.time.LocalDate;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -14,17 +19,30 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 @Builder
 @Entity
+@Table(indexes = {
+    @Index(name = "ux_image_file_name", columnList = "imageFileName", unique = true),
+    @Index(name = "ix_image_object_key", columnList = "objectKey"),
+    @Index(name = "ix_image_update_date", columnList = "updateDate, id"),
+    @Index(name = "ix_image_extension_update_date", columnList = "imageExtension, updateDate, id"),
+    @Index(name = "ix_image_size", columnList = "imageSize, id")
+})
 public class Image {
 
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "image_seq")
+  @SequenceGenerator(name = "image_seq", sequenceName = "image_seq", allocationSize = 50)
   private Long id;
   private String description;
   private String imagePath;
   private String imageFileName;
   private String imageExtension;
   private String url;
+  private String objectKey;
   private Long imageSize;
-  private String updateDate;
+  private LocalDate updateDate;
+  private String eTag;
+  private Instant lastModified;
+  private Integer imageWidth;
+  private String derivatives;
 
 }
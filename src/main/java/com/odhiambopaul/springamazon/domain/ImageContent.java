@@ -0,0 +1,79 @@
+package com.odhiambopaul.springamazon.domain;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import lombok.Builder;
+import lombok.Getter;
+import org.apache.commons.io.IOUtils;
+
+@Getter
+@Builder
+public class ImageContent implements Closeable {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final InputStream inputStream;
+  /**
+   * Set instead of {@code inputStream} when the content is a region of a local file, which can be
+   * sent without copying it through the heap.
+   */
+  private final Path file;
+  private final long filePosition;
+  private final String contentType;
+  private final long contentLength;
+  private final long instanceLength;
+  private final Long rangeStart;
+  private final Long rangeEnd;
+  private final String eTag;
+  private final Date lastModified;
+
+  public boolean isPartial() {
+    return rangeStart != null;
+  }
+
+  public long writeTo(OutputStream outputStream) throws IOException {
+    if (file != null) {
+      return transferFile(Channels.newChannel(outputStream));
+    }
+    try (InputStream in = inputStream) {
+      return IOUtils.copyLarge(in, outputStream, new byte[BUFFER_SIZE]);
+    }
+  }
+
+  public byte[] toByteArray() throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream((int) contentLength);
+    writeTo(outputStream);
+    return outputStream.toByteArray();
+  }
+
+  private long transferFile(WritableByteChannel target) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long position = filePosition;
+      long end = filePosition + contentLength;
+      while (position < end) {
+        long sent = channel.transferTo(position, end - position, target);
+        if (sent <= 0) {
+          break;
+        }
+        position += sent;
+      }
+      return position - filePosition;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (inputStream != null) {
+      inputStream.close();
+    }
+  }
+}
@@ -0,0 +1,23 @@
+package com.odhiambopaul.springamazon.domain;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A page of images. {@code nextKey} is set when the page is ordered by another column than the id, it
+ * is that column's value for the last image and has to be passed back together with {@code nextCursor}.
+ */
+@Getter
+@AllArgsConstructor
+public class ImagePage {
+
+  private final List<Image> images;
+  private final Long nextCursor;
+  private final String nextKey;
+
+  public ImagePage(List<Image> images, Long nextCursor) {
+    this(images, nextCursor, null);
+  }
+
+}
@@ -0,0 +1,43 @@
+package com.odhiambopaul.springamazon.domain;
+
+import java.time.LocalDate;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+
+/**
+ * Filters of an image search. Fields left empty are not applied; the date and size ranges are
+ * inclusive and may be open on either side.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ImageSearchRequest {
+
+  @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+  private LocalDate updatedFrom;
+  @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+  private LocalDate updatedTo;
+  private Long minSize;
+  private Long maxSize;
+  private String extension;
+  private String text;
+
+  /**
+   * The column a search is paged by. A date or size range is served from the index leading with that
+   * column, so the page follows it instead of the id.
+   */
+  public String sortAttribute() {
+    if (updatedFrom != null || updatedTo != null) {
+      return "updateDate";
+    }
+    if (minSize != null || maxSize != null) {
+      return "imageSize";
+    }
+    return "id";
+  }
+
+}
@@ -0,0 +1,23 @@
+package com.odhiambopaul.springamazon.domain;
+
+import java.time.Instant;
+import lombok.Builder;
+import lombok.Getter;
+
+@Getter
+@Builder(toBuilder = true)
+public class NotifyTicket {
+
+  public enum Status {
+    PENDING, INVOKED, FAILED
+  }
+
+  private final String id;
+  private final Status status;
+  private final Instant requestedAt;
+  private final Instant invokedAt;
+  private final String invocationId;
+  private final int coalesced;
+  private final String error;
+
+}
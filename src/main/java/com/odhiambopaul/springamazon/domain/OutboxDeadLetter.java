@@ -0,0 +1,31 @@
+package com.odhiambopaul.springamazon.domain;
+
+import java.time.Instant;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * An outbox message SQS kept rejecting, set aside so the messages behind it can go out. It keeps the
+ * outbox id and the last error for inspection and manual replay.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity
+public class OutboxDeadLetter {
+
+  @Id
+  private Long id;
+  @Lob
+  private String payload;
+  private int attempts;
+  private String error;
+  private Instant failedAt;
+
+}
@@ -0,0 +1,36 @@
+package com.odhiambopaul.springamazon.domain;
+
+import java.time.Instant;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.SequenceGenerator;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity
+public class OutboxMessage {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_message_seq")
+  @SequenceGenerator(name = "outbox_message_seq", sequenceName = "outbox_message_seq", allocationSize = 50)
+  private Long id;
+  @Lob
+  private String payload;
+  private int attempts;
+  private Instant nextAttemptAt;
+  /**
+   * Set while a dispatcher is sending the message, the lease keeps other instances from sending the
+   * messages behind it meanwhile.
+   */
+  private Instant leaseUntil;
+
+}
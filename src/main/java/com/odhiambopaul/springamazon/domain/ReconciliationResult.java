@@ -0,0 +1,27 @@
+package com.odhiambopaul.springamazon.domain;
+
+import java.util.List;
+import lombok.Builder;
+import lombok.Getter;
+
+@Getter
+@Builder
+public class ReconciliationResult {
+
+  private final Mode mode;
+  private final int partitions;
+  private final long listedObjects;
+  private final long missingRows;
+  private final long importedRows;
+  private final long missingObjects;
+  private final long purgedObjects;
+  private final List<String> failedPartitions;
+  private final long durationMillis;
+
+  public enum Mode {
+    REPORT,
+    IMPORT,
+    PURGE
+  }
+
+}
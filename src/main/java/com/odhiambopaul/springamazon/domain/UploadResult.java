@@ -0,0 +1,14 @@
+package com.odhiambopaul.springamazon.domain;
+
+import lombok.Builder;
+import lombok.Getter;
+
+@Getter
+@Builder
+public class UploadResult {
+
+  private final String url;
+  private final String eTag;
+  private final int parts;
+
+}
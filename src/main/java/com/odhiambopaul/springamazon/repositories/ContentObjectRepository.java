@@ -0,0 +1,37 @@
+package com.odhiambopaul.springamazon.repositories;
+
+import com.odhiambopaul.springamazon.domain.ContentObject;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface ContentObjectRepository extends CrudRepository<ContentObject, String>, ContentObjectRepositoryCustom {
+    @Query("select c.objectKey from ContentObject c where c.objectKey > :after "
+            + "and c.objectKey like concat(:prefix, '%') order by c.objectKey")
+    List<String> findKeysAfter(@Param("after") String after, @Param("prefix") String prefix, Pageable pageable);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update ContentObject c set c.refCount = c.refCount + 1 where c.objectKey = :objectKey")
+    int incrementRefCount(@Param("objectKey") String objectKey);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update ContentObject c set c.refCount = c.refCount - 1 where c.objectKey = :objectKey")
+    int decrementRefCount(@Param("objectKey") String objectKey);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update ContentObject c set c.refCount = "
+            + "(select count(i) from Image i where i.objectKey = c.objectKey) where c.objectKey in :keys")
+    int recountRefs(@Param("keys") Collection<String> objectKeys);
+
+    @Query("select c.objectKey from ContentObject c where c.objectKey in :keys and c.refCount <= 0")
+    List<String> findUnreferencedKeys(@Param("keys") Collection<String> objectKeys);
+
+    @Modifying
+    @Query("delete from ContentObject c where c.objectKey in :keys and c.refCount <= 0")
+    int deleteUnreferenced(@Param("keys") Collection<String> objectKeys);
+}
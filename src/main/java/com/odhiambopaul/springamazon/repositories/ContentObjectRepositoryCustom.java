@@ -0,0 +1,19 @@
+package com.odhiambopaul.springamazon.repositories;
+
+import com.odhiambopaul.springamazon.domain.ContentObject;
+
+import java.util.Collection;
+
+public interface ContentObjectRepositoryCustom {
+    /**
+     * Inserts new content rows without the select that {@code save} issues for assigned ids, so the
+     * inserts go out as JDBC batches. Flushes and clears the persistence context afterwards.
+     */
+    void persistAll(Collection<ContentObject> contents);
+
+    /**
+     * Inserts one new content row right away, so a concurrent insert of the same key fails here as a
+     * duplicate key instead of at commit. The persistence context is cleared on failure.
+     */
+    ContentObject insert(ContentObject content);
+}
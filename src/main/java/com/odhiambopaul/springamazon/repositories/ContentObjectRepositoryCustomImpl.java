@@ -0,0 +1,34 @@
+package com.odhiambopaul.springamazon.repositories;
+
+import com.odhiambopaul.springamazon.domain.ContentObject;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceException;
+import java.util.Collection;
+
+public class ContentObjectRepositoryCustomImpl implements ContentObjectRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public void persistAll(Collection<ContentObject> contents) {
+        contents.forEach(entityManager::persist);
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Override
+    public ContentObject insert(ContentObject content) {
+        entityManager.persist(content);
+        try {
+            entityManager.flush();
+        } catch (PersistenceException e) {
+            // drop the failed insert, the caller carries on in the same transaction
+            entityManager.clear();
+            throw e;
+        }
+        return content;
+    }
+}
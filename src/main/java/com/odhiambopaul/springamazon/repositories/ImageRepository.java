@@ -1,10 +1,74 @@
 package com.odhiambopaul.springamazon.repositories;
 
 import com.odhiambopaul.springamazon.domain.Image;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
-public interface ImageRepository extends CrudRepository<Image, Long> {
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+public interface ImageRepository extends CrudRepository<Image, Long>, ImageRepositoryCustom {
+    String CACHE_NAME = "images";
+
+    @Cacheable(cacheNames = CACHE_NAME, key = "#p0", unless = "#result == null")
     Image findByImageFileName(String imageFileName);
 
+    @CacheEvict(cacheNames = CACHE_NAME, key = "#p0")
     Long deleteByImageFileName(String imageFileName);
+
+    @Override
+    @CacheEvict(cacheNames = CACHE_NAME, key = "#p0.imageFileName")
+    <S extends Image> S save(S image);
+
+    @Override
+    @CacheEvict(cacheNames = CACHE_NAME, allEntries = true)
+    <S extends Image> Iterable<S> saveAll(Iterable<S> images);
+
+    @Query("select min(i.id) as minId, max(i.id) as maxId from Image i")
+    IdRange findIdRange();
+
+    Image findFirstByIdGreaterThanEqualOrderByIdAsc(Long id);
+
+    Image findFirstByObjectKeyAndDerivativesIsNotNull(String objectKey);
+
+    List<Image> findByImageFileNameIn(Collection<String> imageFileNames);
+
+    @Query("select distinct i.objectKey from Image i where i.objectKey in :keys")
+    List<String> findObjectKeysIn(@Param("keys") Collection<String> objectKeys);
+
+    @Query("select i from Image i where i.id > :after "
+            + "and (:extension is null or i.imageExtension = :extension) "
+            + "and (:updatedBefore is null or i.updateDate < :updatedBefore) order by i.id")
+    List<Image> findForDelete(@Param("after") Long after,
+                              @Param("extension") String extension,
+                              @Param("updatedBefore") LocalDate updatedBefore,
+                              Pageable pageable);
+
+    @Modifying
+    @CacheEvict(cacheNames = CACHE_NAME, allEntries = true)
+    @Query("delete from Image i where i.id in :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+
+    List<Image> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    @Modifying
+    @CacheEvict(cacheNames = CACHE_NAME, key = "#p0")
+    @Query("update Image i set i.derivatives = :derivatives, i.imageWidth = :width "
+            + "where i.imageFileName = :name and (i.eTag = :eTag or :eTag is null)")
+    int updateDerivatives(@Param("name") String imageFileName,
+                          @Param("eTag") String eTag,
+                          @Param("derivatives") String derivatives,
+                          @Param("width") Integer width);
+
+    interface IdRange {
+        Long getMinId();
+
+        Long getMaxId();
+    }
 }
@@ -0,0 +1,22 @@
+package com.odhiambopaul.springamazon.repositories;
+
+import com.odhiambopaul.springamazon.domain.Image;
+import com.odhiambopaul.springamazon.domain.ImageSearchRequest;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+public interface ImageRepositoryCustom {
+    /**
+     * Streams all images ordered by id. Rows are detached as they are read, so the persistence
+     * context does not grow with the result. Must be consumed inside a transaction and closed.
+     */
+    Stream<Image> streamAll();
+
+    /**
+     * Returns up to {@code limit} images matching the search, ordered by the request's sort attribute
+     * and id, that come after the {@code afterKey}, {@code after} position. Only the filters set on the
+     * request become predicates.
+     */
+    List<Image> search(ImageSearchRequest request, Long after, String afterKey, int limit);
+}
@@ -0,0 +1,113 @@
+package com.odhiambopaul.springamazon.repositories;
+
+import com.odhiambopaul.springamazon.config.MySqlFullTextDialect;
+import com.odhiambopaul.springamazon.domain.Image;
+import com.odhiambopaul.springamazon.domain.ImageSearchRequest;
+import org.hibernate.jpa.QueryHints;
+import org.springframework.beans.factory.annotation.Value;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+public class ImageRepositoryCustomImpl implements ImageRepositoryCustom {
+
+    private static final Pattern BOOLEAN_OPERATORS = Pattern.compile("[+\\-<>()~*\"@]");
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${image.listing.fetch-size}")
+    private int fetchSize;
+
+    @Value("${image.search.full-text}")
+    private boolean fullText;
+
+    @Override
+    public Stream<Image> streamAll() {
+        return entityManager.createQuery("select i from Image i order by i.id", Image.class)
+                .setHint(QueryHints.HINT_FETCH_SIZE, fetchSize)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .getResultStream()
+                .peek(entityManager::detach);
+    }
+
+    @Override
+    public List<Image> search(ImageSearchRequest request, Long after, String afterKey, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Image> query = cb.createQuery(Image.class);
+        Root<Image> image = query.from(Image.class);
+        String sortAttribute = request.sortAttribute();
+
+        List<Predicate> predicates = new ArrayList<>();
+        if (after != null) {
+            Predicate afterId = cb.greaterThan(image.get("id"), after);
+            if ("updateDate".equals(sortAttribute)) {
+                predicates.add(after(cb, image.<LocalDate>get("updateDate"), LocalDate.parse(afterKey), afterId));
+            } else if ("imageSize".equals(sortAttribute)) {
+                predicates.add(after(cb, image.<Long>get("imageSize"), Long.valueOf(afterKey), afterId));
+            } else {
+                predicates.add(afterId);
+            }
+        }
+        if (request.getUpdatedFrom() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(image.get("updateDate"), request.getUpdatedFrom()));
+        }
+        if (request.getUpdatedTo() != null) {
+            predicates.add(cb.lessThanOrEqualTo(image.get("updateDate"), request.getUpdatedTo()));
+        }
+        if (request.getMinSize() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(image.get("imageSize"), request.getMinSize()));
+        }
+        if (request.getMaxSize() != null) {
+            predicates.add(cb.lessThanOrEqualTo(image.get("imageSize"), request.getMaxSize()));
+        }
+        if (request.getExtension() != null) {
+            predicates.add(cb.equal(image.get("imageExtension"), request.getExtension()));
+        }
+        String text = fullText ? searchTerms(request.getText()) : request.getText();
+        if (text != null && !text.trim().isEmpty()) {
+            predicates.add(fullText
+                    ? cb.greaterThan(cb.function(MySqlFullTextDialect.MATCH_AGAINST, Double.class,
+                            image.get("description"), cb.literal(text)), 0.0)
+                    // databases without the full-text function fall back to a scan
+                    : cb.like(cb.lower(image.get("description")), "%" + text.toLowerCase() + "%"));
+        }
+
+        List<Order> order = new ArrayList<>();
+        if (!"id".equals(sortAttribute)) {
+            order.add(cb.asc(image.get(sortAttribute)));
+        }
+        order.add(cb.asc(image.get("id")));
+        query.select(image)
+                .where(predicates.toArray(new Predicate[0]))
+                .orderBy(order);
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .getResultList();
+    }
+
+    private static <Y extends Comparable<? super Y>> Predicate after(CriteriaBuilder cb, Path<Y> key, Y value,
+                                                                     Predicate afterId) {
+        return cb.or(cb.greaterThan(key, value), cb.and(cb.equal(key, value), afterId));
+    }
+
+    /**
+     * Drops the boolean mode operators from user input, so the words are matched as plain terms and a
+     * stray quote or parenthesis cannot make the query fail.
+     */
+    private static String searchTerms(String text) {
+        return text == null ? null : BOOLEAN_OPERATORS.matcher(text).replaceAll(" ").trim();
+    }
+}
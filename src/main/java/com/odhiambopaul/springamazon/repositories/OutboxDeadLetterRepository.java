@@ -0,0 +1,7 @@
+package com.odhiambopaul.springamazon.repositories;
+
+import com.odhiambopaul.springamazon.domain.OutboxDeadLetter;
+import org.springframework.data.repository.CrudRepository;
+
+public interface OutboxDeadLetterRepository extends CrudRepository<OutboxDeadLetter, Long> {
+}
@@ -0,0 +1,17 @@
+package com.odhiambopaul.springamazon.repositories;
+
+import com.odhiambopaul.springamazon.domain.OutboxMessage;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.repository.CrudRepository;
+
+import javax.persistence.LockModeType;
+import java.util.List;
+
+public interface OutboxMessageRepository extends CrudRepository<OutboxMessage, Long> {
+    /**
+     * Locks the oldest messages while a dispatcher leases them. The lock waits for another instance's
+     * claim instead of skipping its rows, so the head is always seen and messages leave in id order.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<OutboxMessage> findTop10ByOrderByIdAsc();
+}
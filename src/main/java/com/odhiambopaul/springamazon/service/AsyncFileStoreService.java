@@ -0,0 +1,26 @@
+package com.odhiambopaul.springamazon.service;
+
+import com.odhiambopaul.springamazon.domain.ImageContent;
+import com.odhiambopaul.springamazon.domain.UploadResult;
+
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+public interface AsyncFileStoreService {
+
+  CompletableFuture<UploadResult> upload(String path,
+      String fileName,
+      String contentType,
+      long contentLength,
+      Optional<Map<String, String>> optionalMetaData,
+      InputStream inputStream);
+
+  CompletableFuture<byte[]> download(String path, String key);
+
+  CompletableFuture<ImageContent> stream(String path, String key, Long rangeStart, Long rangeEnd, String ifRange);
+
+  CompletableFuture<Void> delete(String path, String key);
+
+}
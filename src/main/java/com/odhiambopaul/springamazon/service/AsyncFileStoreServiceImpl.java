@@ -0,0 +1,56 @@
+package com.odhiambopaul.springamazon.service;
+
+import com.odhiambopaul.springamazon.domain.ImageContent;
+import com.odhiambopaul.springamazon.domain.UploadResult;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs the blocking file store on the S3 bulkhead, so servlet threads are released while S3 calls
+ * are in flight. The v1 AWS SDK used by this project has no non-blocking S3 client; the bulkhead
+ * bounds how many S3 calls can be outstanding and fails fast once it is saturated. Reads get a much
+ * shorter timeout than uploads, which may stream a large file.
+ */
+@Service
+public class AsyncFileStoreServiceImpl implements AsyncFileStoreService {
+
+    private final FileStoreService fileStore;
+    private final Bulkhead bulkhead;
+    private final long readTimeoutMillis;
+
+    public AsyncFileStoreServiceImpl(FileStoreService fileStore,
+                                     Bulkhead s3Bulkhead,
+                                     @Value("${bulkhead.s3.read-timeout-ms}") long readTimeoutMillis) {
+        this.fileStore = fileStore;
+        this.bulkhead = s3Bulkhead;
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    public CompletableFuture<UploadResult> upload(String path,
+                                                  String fileName,
+                                                  String contentType,
+                                                  long contentLength,
+                                                  Optional<Map<String, String>> optionalMetaData,
+                                                  InputStream inputStream) {
+        return bulkhead.supply(
+                () -> fileStore.upload(path, fileName, contentType, contentLength, optionalMetaData, inputStream));
+    }
+
+    public CompletableFuture<byte[]> download(String path, String key) {
+        return bulkhead.supply(() -> fileStore.download(path, key), readTimeoutMillis);
+    }
+
+    public CompletableFuture<ImageContent> stream(String path, String key, Long rangeStart, Long rangeEnd, String ifRange) {
+        // completes once the response headers are in, the body is read by the caller
+        return bulkhead.supply(() -> fileStore.stream(path, key, rangeStart, rangeEnd, ifRange), readTimeoutMillis);
+    }
+
+    public CompletableFuture<Void> delete(String path, String key) {
+        return bulkhead.run(() -> fileStore.delete(path, key));
+    }
+}
@@ -0,0 +1,113 @@
+package com.odhiambopaul.springamazon.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs the calls to one downstream on its own bounded pool, so a slow dependency only exhausts its
+ * own threads. When the queue is full a call is rejected right away, and a call running longer than
+ * the timeout is interrupted; either way the future fails with a {@link BulkheadException}.
+ */
+@Slf4j
+public class Bulkhead {
+
+    private final String name;
+    private final long timeoutMillis;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledThreadPoolExecutor timer;
+    private final Counter rejected;
+    private final Counter timedOut;
+
+    public Bulkhead(String name, int threads, int queueCapacity, long timeoutMillis, MeterRegistry registry) {
+        this.name = name;
+        this.timeoutMillis = timeoutMillis;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("bulkhead-" + name + "-"));
+        this.executor.allowCoreThreadTimeOut(true);
+        this.timer = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("bulkhead-" + name + "-timer-"));
+        this.timer.setRemoveOnCancelPolicy(true);
+        new ExecutorServiceMetrics(executor, "bulkhead." + name, Collections.emptyList()).bindTo(registry);
+        this.rejected = Counter.builder("bulkhead.rejected")
+                .description("Calls rejected because the bulkhead was saturated")
+                .tag("bulkhead", name)
+                .register(registry);
+        this.timedOut = Counter.builder("bulkhead.timeouts")
+                .description("Calls abandoned after the bulkhead timeout")
+                .tag("bulkhead", name)
+                .register(registry);
+    }
+
+    public <T> CompletableFuture<T> supply(Supplier<T> call) {
+        return supply(call, timeoutMillis);
+    }
+
+    /**
+     * Like {@link #supply(Supplier)} with its own timeout. A value that arrives after the timeout is
+     * closed if it holds a resource, such as an open S3 stream, since nobody will read it anymore.
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> call, long timeoutMillis) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> task;
+        try {
+            task = executor.submit(() -> {
+                try {
+                    T value = call.get();
+                    if (!result.complete(value)) {
+                        closeQuietly(value);
+                    }
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            result.completeExceptionally(new BulkheadException(String.format("%s is saturated", name)));
+            return result;
+        }
+        ScheduledFuture<?> timeout = timer.schedule(() -> {
+            if (result.completeExceptionally(new BulkheadException(
+                    String.format("%s did not answer within %d ms", name, timeoutMillis)))) {
+                timedOut.increment();
+                task.cancel(true);
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        result.whenComplete((value, e) -> timeout.cancel(false));
+        return result;
+    }
+
+    private static void closeQuietly(Object value) {
+        if (value instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) value).close();
+            } catch (Exception e) {
+                log.debug("Failed to close an abandoned result, {}", e.getMessage());
+            }
+        }
+    }
+
+    public CompletableFuture<Void> run(Runnable call) {
+        return supply(() -> {
+            call.run();
+            return null;
+        });
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+        timer.shutdown();
+    }
+}
@@ -0,0 +1,11 @@
+package com.odhiambopaul.springamazon.service;
+
+/**
+ * Thrown when a downstream's bulkhead is saturated or the call did not finish within its timeout.
+ */
+public class BulkheadException extends RuntimeException {
+
+    public BulkheadException(String message) {
+        super(message);
+    }
+}
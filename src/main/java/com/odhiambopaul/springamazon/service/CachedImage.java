@@ -0,0 +1,15 @@
+package com.odhiambopaul.springamazon.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Date;
+
+@Getter
+@AllArgsConstructor
+class CachedImage {
+    private final byte[] bytes;
+    private final String contentType;
+    private final String eTag;
+    private final Date lastModified;
+}
@@ -0,0 +1,369 @@
+package com.odhiambopaul.springamazon.service;
+
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.odhiambopaul.springamazon.domain.CacheTierStats;
+import com.odhiambopaul.springamazon.domain.ImageContent;
+import com.odhiambopaul.springamazon.domain.UploadResult;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache in front of the S3 file store. Hot objects are kept in a size-bounded
+ * W-TinyLFU heap tier backed by a larger memory-mapped disk tier. Entries are keyed by object
+ * location and ETag; uploads and deletes through this service drop the current entry. Each tier
+ * reports its hits, misses, evictions, entries and bytes as {@code image.cache.*} meters tagged
+ * with the tier.
+ */
+@Primary
+@Service
+@ConditionalOnProperty(name = "image.cache.enabled", havingValue = "true")
+@Profile("!filesystem")
+@Slf4j
+public class CachingFileStoreService implements FileStoreService {
+
+    private final FileStoreServiceImpl delegate;
+    private final long maxObjectSize;
+    private final Cache<String, CachedImage> heap;
+    private final DiskCacheTier disk;
+    // the ETag last seen per location, a dropped entry only costs one read through to S3
+    private final Cache<String, String> eTags;
+
+    public CachingFileStoreService(FileStoreServiceImpl delegate,
+                                   @Value("${image.cache.max-object-size}") long maxObjectSize,
+                                   @Value("${image.cache.heap.max-bytes}") long heapMaxBytes,
+                                   @Value("${image.cache.disk.enabled}") boolean diskEnabled,
+                                   @Value("${image.cache.disk.directory}") String diskDirectory,
+                                   @Value("${image.cache.disk.max-bytes}") long diskMaxBytes,
+                                   @Value("${image.cache.etags.max-entries}") long eTagsMaxEntries,
+                                   MeterRegistry registry) throws IOException {
+        this.delegate = delegate;
+        this.maxObjectSize = maxObjectSize;
+        this.heap = Caffeine.newBuilder()
+                .maximumWeight(heapMaxBytes)
+                .weigher((String key, CachedImage image) -> image.getBytes().length)
+                .recordStats()
+                .build();
+        this.disk = diskEnabled ? new DiskCacheTier(Paths.get(diskDirectory), diskMaxBytes) : null;
+        this.eTags = Caffeine.newBuilder()
+                .maximumSize(eTagsMaxEntries)
+                .build();
+        bindTierMeters("heap", this::heapStats, registry);
+        if (disk != null) {
+            bindTierMeters("disk", disk::stats, registry);
+        }
+    }
+
+    private void bindTierMeters(String tier, Supplier<CacheTierStats> stats, MeterRegistry registry) {
+        FunctionCounter.builder("image.cache.hits", this, service -> stats.get().getHits())
+                .description("Reads answered by the cache tier")
+                .tag("tier", tier)
+                .register(registry);
+        FunctionCounter.builder("image.cache.misses", this, service -> stats.get().getMisses())
+                .description("Reads the cache tier could not answer")
+                .tag("tier", tier)
+                .register(registry);
+        FunctionCounter.builder("image.cache.evictions", this, service -> stats.get().getEvictions())
+                .description("Entries evicted from the cache tier")
+                .tag("tier", tier)
+                .register(registry);
+        Gauge.builder("image.cache.entries", this, service -> stats.get().getEntries())
+                .description("Entries held by the cache tier")
+                .tag("tier", tier)
+                .register(registry);
+        Gauge.builder("image.cache.size", this, service -> stats.get().getBytes())
+                .description("Bytes held by the cache tier")
+                .baseUnit("bytes")
+                .tag("tier", tier)
+                .register(registry);
+    }
+
+    public String upload(String path,
+                         String fileName,
+                         Optional<Map<String, String>> optionalMetaData,
+                         InputStream inputStream) {
+        try {
+            return delegate.upload(path, fileName, optionalMetaData, inputStream);
+        } finally {
+            invalidate(path, fileName);
+        }
+    }
+
+    public UploadResult upload(String path,
+                               String fileName,
+                               String contentType,
+                               long contentLength,
+                               Optional<Map<String, String>> optionalMetaData,
+                               InputStream inputStream) {
+        try {
+            return delegate.upload(path, fileName, contentType, contentLength, optionalMetaData, inputStream);
+        } finally {
+            invalidate(path, fileName);
+        }
+    }
+
+    public byte[] download(String path, String key) {
+        String eTag = eTags.getIfPresent(location(path, key));
+        if (eTag != null) {
+            String cacheKey = cacheKey(path, key, eTag);
+            CachedImage cached = heap.getIfPresent(cacheKey);
+            if (cached != null) {
+                return cached.getBytes();
+            }
+            DiskCacheTier.Entry entry = disk == null ? null : disk.get(cacheKey);
+            ByteBuffer buffer = entry == null ? null : disk.map(entry);
+            if (buffer != null) {
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                heap.put(cacheKey, new CachedImage(bytes, entry.getContentType(), entry.getETag(), entry.getLastModified()));
+                return bytes;
+            }
+        }
+        return load(path, key).getBytes();
+    }
+
+    public ImageContent stream(String path, String key, Long rangeStart, Long rangeEnd, String ifRange) {
+        String eTag = eTags.getIfPresent(location(path, key));
+        if (eTag != null) {
+            String cacheKey = cacheKey(path, key, eTag);
+            CachedImage cached = heap.getIfPresent(cacheKey);
+            if (cached != null) {
+                return content(ByteBuffer.wrap(cached.getBytes()), cached.getContentType(), cached.getETag(),
+                        cached.getLastModified(), rangeStart, rangeEnd, ifRange);
+            }
+            DiskCacheTier.Entry entry = disk == null ? null : disk.get(cacheKey);
+            ByteBuffer buffer = entry == null ? null : disk.map(entry);
+            if (buffer != null) {
+                return content(buffer, entry.getContentType(), entry.getETag(), entry.getLastModified(),
+                        rangeStart, rangeEnd, ifRange);
+            }
+        }
+        if (rangeStart != null) {
+            return delegate.stream(path, key, rangeStart, rangeEnd, ifRange);
+        }
+        ImageContent content = delegate.stream(path, key, null, null, null);
+        if (content.getContentLength() > maxObjectSize || content.getETag() == null) {
+            return content;
+        }
+        // the bytes are cached as they are sent, instead of reading the whole object before the first byte
+        return ImageContent.builder()
+                .inputStream(new FillingInputStream(content, path, key))
+                .contentType(content.getContentType())
+                .contentLength(content.getContentLength())
+                .instanceLength(content.getInstanceLength())
+                .eTag(content.getETag())
+                .lastModified(content.getLastModified())
+                .build();
+    }
+
+    public void delete(String path, String key) {
+        try {
+            delegate.delete(path, key);
+        } finally {
+            invalidate(path, key);
+        }
+    }
+
+    public List<String> deleteAll(String path, List<String> keys) {
+        try {
+            return delegate.deleteAll(path, keys);
+        } finally {
+            keys.forEach(key -> invalidate(path, key));
+        }
+    }
+
+    public List<CacheTierStats> getTierStats() {
+        List<CacheTierStats> stats = new ArrayList<>();
+        stats.add(heapStats());
+        if (disk != null) {
+            stats.add(disk.stats());
+        }
+        return stats;
+    }
+
+    private CacheTierStats heapStats() {
+        CacheStats heapStats = heap.stats();
+        long heapBytes = heap.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L);
+        return new CacheTierStats("heap", heapStats.hitCount(), heapStats.missCount(), heapStats.evictionCount(),
+                heap.estimatedSize(), heapBytes);
+    }
+
+    private CachedImage load(String path, String key) {
+        CachedImage image = read(delegate.stream(path, key, null, null, null));
+        if (image.getBytes().length <= maxObjectSize) {
+            fill(path, key, image);
+        }
+        return image;
+    }
+
+    private void fill(String path, String key, CachedImage image) {
+        if (image.getETag() == null) {
+            return;
+        }
+        String cacheKey = cacheKey(path, key, image.getETag());
+        heap.put(cacheKey, image);
+        if (disk != null) {
+            disk.put(cacheKey, image);
+        }
+        eTags.put(location(path, key), image.getETag());
+    }
+
+    private static CachedImage read(ImageContent content) {
+        try (ImageContent source = content) {
+            return new CachedImage(IOUtils.toByteArray(source.getInputStream()), source.getContentType(),
+                    source.getETag(), source.getLastModified());
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to download the file", e);
+        }
+    }
+
+    private void invalidate(String path, String key) {
+        String eTag = eTags.asMap().remove(location(path, key));
+        if (eTag != null) {
+            String cacheKey = cacheKey(path, key, eTag);
+            heap.invalidate(cacheKey);
+            if (disk != null) {
+                disk.remove(cacheKey);
+            }
+        }
+    }
+
+    private static ImageContent content(ByteBuffer buffer, String contentType, String eTag, Date lastModified,
+                                        Long rangeStart, Long rangeEnd, String ifRange) {
+        long length = buffer.remaining();
+        ImageContent.ImageContentBuilder builder = ImageContent.builder()
+                .contentType(contentType)
+                .instanceLength(length)
+                .eTag(eTag)
+                .lastModified(lastModified);
+        if (rangeStart == null || !ifRangeMatches(ifRange, eTag, lastModified)) {
+            return builder
+                    .inputStream(new ByteBufferBackedInputStream(buffer))
+                    .contentLength(length)
+                    .build();
+        }
+        long end = rangeEnd == null ? length - 1 : Math.min(rangeEnd, length - 1);
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(rangeStart.intValue());
+        slice.limit((int) end + 1);
+        return builder
+                .inputStream(new ByteBufferBackedInputStream(slice.slice()))
+                .contentLength(end - rangeStart + 1)
+                .rangeStart(rangeStart)
+                .rangeEnd(end)
+                .build();
+    }
+
+    private static boolean ifRangeMatches(String ifRange, String eTag, Date lastModified) {
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals("\"" + eTag + "\"");
+        }
+        if (ifRange.startsWith("W/") || lastModified == null) {
+            return false;
+        }
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return !lastModified.toInstant().isAfter(date.toInstant());
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Copies the bytes read from a cold object and fills the cache once the whole object went through.
+     * A stream closed early, or skipped over, leaves the cache untouched.
+     */
+    private class FillingInputStream extends FilterInputStream {
+        private final ImageContent content;
+        private final String path;
+        private final String key;
+        private ByteArrayOutputStream copy;
+
+        FillingInputStream(ImageContent content, String path, String key) {
+            super(content.getInputStream());
+            this.content = content;
+            this.path = path;
+            this.key = key;
+            this.copy = new ByteArrayOutputStream((int) content.getContentLength());
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b < 0) {
+                complete();
+            } else if (copy != null) {
+                copy.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read < 0) {
+                complete();
+            } else if (copy != null) {
+                copy.write(buffer, offset, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            copy = null;
+            return super.skip(n);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void complete() {
+            if (copy != null && copy.size() == content.getContentLength()) {
+                fill(path, key, new CachedImage(copy.toByteArray(), content.getContentType(), content.getETag(),
+                        content.getLastModified()));
+            }
+            copy = null;
+        }
+    }
+
+    private static String location(String path, String key) {
+        return path + "/" + key;
+    }
+
+    private static String cacheKey(String path, String key, String eTag) {
+        return location(path, key) + "@" + eTag;
+    }
+}
@@ -0,0 +1,171 @@
+package com.odhiambopaul.springamazon.service;
+
+import com.odhiambopaul.springamazon.domain.ContentObject;
+import com.odhiambopaul.springamazon.domain.Image;
+import com.odhiambopaul.springamazon.domain.UploadResult;
+import com.odhiambopaul.springamazon.repositories.ContentObjectRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps uploaded content addressed by its SHA-256 and counts the images referencing each object, so
+ * identical uploads share one stored object. The object and its variants are removed from the store
+ * when the last reference goes away.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ContentObjectService {
+
+    private final ContentObjectRepository repository;
+    private final FileStoreService fileStore;
+    private final DerivativeService derivativeService;
+
+    /**
+     * Hashes the spooled multipart content. This is a local read, it decides whether the bytes have
+     * to be sent to S3 at all.
+     */
+    public String hash(MultipartFile file) {
+        try (InputStream inputStream = file.getInputStream()) {
+            return DigestUtils.sha256Hex(inputStream);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to hash the file", e);
+        }
+    }
+
+    public boolean exists(String objectKey) {
+        return repository.existsById(objectKey);
+    }
+
+    /**
+     * Adds a reference to the content. {@code uploaded} is the result of storing the bytes, or
+     * {@code null} when the upload was skipped because the content already existed.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public ContentObject acquire(String objectKey, String path, long size, String contentType, UploadResult uploaded) {
+        if (repository.incrementRefCount(objectKey) > 0) {
+            return repository.findById(objectKey)
+                    .orElseThrow(() -> new IllegalStateException("Content " + objectKey + " disappeared"));
+        }
+        if (uploaded == null) {
+            throw new IllegalStateException("Content " + objectKey + " was removed during the upload, retry the upload");
+        }
+        try {
+            return repository.insert(ContentObject.builder()
+                    .objectKey(objectKey)
+                    .imagePath(path)
+                    .url(uploaded.getUrl())
+                    .eTag(uploaded.getETag())
+                    .contentType(contentType)
+                    .objectSize(size)
+                    .refCount(1)
+                    .build());
+        } catch (DataIntegrityViolationException e) {
+            // a concurrent first upload of the same content inserted the row first
+            if (repository.incrementRefCount(objectKey) > 0) {
+                return repository.findById(objectKey)
+                        .orElseThrow(() -> new IllegalStateException("Content " + objectKey + " disappeared"));
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Drops a reference to the content. Returns {@code true} when it was the last one; the caller
+     * then has to remove the stored object with {@link #deleteStored(Image)}.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public boolean release(String objectKey) {
+        repository.decrementRefCount(objectKey);
+        ContentObject content = repository.findById(objectKey).orElse(null);
+        if (content == null || content.getRefCount() > 0) {
+            return false;
+        }
+        repository.delete(content);
+        return true;
+    }
+
+    public void deleteStored(Image image) {
+        if (repository.existsById(image.getObjectKey())) {
+            // the content was uploaded again after the last reference was dropped
+            return;
+        }
+        fileStore.delete(image.getImagePath(), image.getObjectKey());
+        derivativeService.deleteDerivatives(image);
+        log.info("deleted unreferenced content, {}", image.getObjectKey());
+    }
+
+    /**
+     * Recounts the references of the given content after its images were deleted in bulk and drops
+     * the content that is no longer referenced. Returns the keys of the dropped content.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public List<String> releaseAll(Collection<String> objectKeys) {
+        if (objectKeys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        repository.recountRefs(objectKeys);
+        List<String> unreferenced = repository.findUnreferencedKeys(objectKeys);
+        repository.deleteUnreferenced(objectKeys);
+        return unreferenced;
+    }
+
+    /**
+     * Removes the stored objects and variants of the images with multi-object deletes, skipping content
+     * that was uploaded again meanwhile. Returns the locations that could not be removed.
+     */
+    public List<String> deleteStored(Collection<Image> images) {
+        Set<String> uploadedAgain = new HashSet<>();
+        repository.findAllById(images.stream().map(Image::getObjectKey).collect(Collectors.toSet()))
+                .forEach(content -> uploadedAgain.add(content.getObjectKey()));
+        Map<String, List<String>> keysByPath = new HashMap<>();
+        for (Image image : images) {
+            if (uploadedAgain.contains(image.getObjectKey())) {
+                continue;
+            }
+            keysByPath.computeIfAbsent(image.getImagePath(), path -> new ArrayList<>()).add(image.getObjectKey());
+            for (String derivativePath : derivativeService.derivativePaths(image)) {
+                keysByPath.computeIfAbsent(derivativePath, path -> new ArrayList<>()).add(image.getObjectKey());
+            }
+        }
+        List<String> failed = new ArrayList<>();
+        keysByPath.forEach((path, keys) -> fileStore.deleteAll(path, keys)
+                .forEach(key -> failed.add(path + "/" + key)));
+        log.info("deleted unreferenced content, {} objects, {} failed",
+                images.size() - uploadedAgain.size(), failed.size());
+        return failed;
+    }
+
+    public void deleteStoredAfterCommit(Image image) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    deleteStored(image);
+                } catch (RuntimeException e) {
+                    log.error("Failed to delete unreferenced content {}, {}", image.getObjectKey(), e.getMessage());
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,283 @@
+package com.odhiambopaul.springamazon.service;
+
+import com.odhiambopaul.springamazon.domain.Image;
+import com.odhiambopaul.springamazon.domain.ImageContent;
+import com.odhiambopaul.springamazon.repositories.ImageRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Generates resized variants of uploaded images with Java2D on a bounded worker pool. Variants are
+ * stored next to the original under {@code <imagePath>/w<width>} and the generated widths are
+ * recorded on the image. Widths not smaller than the original are served by the original.
+ */
+@Service
+@Slf4j
+public class DerivativeService {
+
+    private final FileStoreService fileStore;
+    private final ImageRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final List<Integer> widths;
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentMap<String, CompletableFuture<Generated>> generating = new ConcurrentHashMap<>();
+
+    public DerivativeService(FileStoreService fileStore,
+                             ImageRepository repository,
+                             TransactionTemplate transactionTemplate,
+                             @Value("${image.derivatives.widths}") List<Integer> widths,
+                             @Value("${image.derivatives.threads}") int threads,
+                             @Value("${image.derivatives.queue-capacity}") int queueCapacity) {
+        this.fileStore = fileStore;
+        this.repository = repository;
+        this.transactionTemplate = transactionTemplate;
+        List<Integer> sorted = new ArrayList<>(widths);
+        Collections.sort(sorted);
+        this.widths = Collections.unmodifiableList(sorted);
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("image-derivatives-"));
+    }
+
+    /**
+     * Generates all configured variants once the current transaction commits.
+     */
+    public void generateAfterCommit(Image image) {
+        if (widths.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            generateAsync(image);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                generateAsync(image);
+            }
+        });
+    }
+
+    /**
+     * Maps a requested width to the configured variant serving it, or {@code null} when the original
+     * has to be served.
+     */
+    public Integer resolveWidth(Image image, int requested) {
+        if (widths.isEmpty()) {
+            return null;
+        }
+        int width = widths.stream()
+                .filter(w -> w >= requested)
+                .findFirst()
+                .orElse(widths.get(widths.size() - 1));
+        if (image.getImageWidth() != null && width >= image.getImageWidth()) {
+            return null;
+        }
+        return width;
+    }
+
+    public boolean hasDerivative(Image image, int width) {
+        return generatedWidths(image).contains(width);
+    }
+
+    public String derivativePath(Image image, int width) {
+        return String.format("%s/w%d", image.getImagePath(), width);
+    }
+
+    public List<String> derivativePaths(Image image) {
+        return generatedWidths(image).stream()
+                .map(width -> derivativePath(image, width))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Generates the variants of the image now and returns the requested one. Concurrent requests for
+     * the same object share one generation, and a full queue fails with a {@link BulkheadException}.
+     */
+    public CompletableFuture<ImageContent> generateOnDemand(Image image, int width) {
+        String location = String.format("%s/%s", image.getImagePath(), image.getObjectKey());
+        CompletableFuture<Generated> generation;
+        try {
+            generation = generating.computeIfAbsent(location,
+                    key -> CompletableFuture.supplyAsync(() -> generate(image), executor));
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(new BulkheadException("Variant generation is saturated"));
+        }
+        generation.whenComplete((generated, e) -> generating.remove(location, generation));
+        return generation.thenApply(generated -> {
+            byte[] bytes = generated.variants.get(width);
+            String contentType = contentType(image.getImageExtension());
+            if (bytes == null) {
+                bytes = generated.original;
+            }
+            return ImageContent.builder()
+                    .inputStream(new ByteArrayInputStream(bytes))
+                    .contentType(contentType)
+                    .contentLength(bytes.length)
+                    .instanceLength(bytes.length)
+                    .build();
+        });
+    }
+
+    public void deleteDerivatives(Image image) {
+        for (Integer width : generatedWidths(image)) {
+            try {
+                fileStore.delete(derivativePath(image, width), image.getObjectKey());
+            } catch (RuntimeException e) {
+                log.error("Failed to delete {} variant of {}, {}", width, image.getImageFileName(), e.getMessage());
+            }
+        }
+    }
+
+    private void generateAsync(Image image) {
+        try {
+            executor.execute(() -> {
+                try {
+                    generate(image);
+                } catch (RuntimeException e) {
+                    log.error("Failed to generate variants of {}, {}", image.getImageFileName(), e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("Variant queue is full, variants of {} will be generated on demand", image.getImageFileName());
+        }
+    }
+
+    private Generated generate(Image image) {
+        long started = System.nanoTime();
+        byte[] original = fileStore.download(image.getImagePath(), image.getObjectKey());
+        BufferedImage source;
+        try {
+            source = ImageIO.read(new ByteArrayInputStream(original));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read image " + image.getImageFileName(), e);
+        }
+        if (source == null) {
+            throw new IllegalStateException("Unsupported image format " + image.getImageFileName());
+        }
+
+        int sourceWidth = source.getWidth();
+        Generated generated = new Generated(original);
+        String format = format(image.getImageExtension());
+        String contentType = contentType(image.getImageExtension());
+        for (Integer width : widths) {
+            if (width >= sourceWidth) {
+                break;
+            }
+            byte[] bytes = resize(source, width, format);
+            fileStore.upload(derivativePath(image, width), image.getObjectKey(), contentType, bytes.length,
+                    Optional.empty(), new ByteArrayInputStream(bytes));
+            generated.variants.put(width, bytes);
+        }
+
+        String recorded = generated.variants.keySet().stream()
+                .sorted()
+                .map(String::valueOf)
+                .collect(Collectors.joining(","));
+        transactionTemplate.execute(status -> repository.updateDerivatives(
+                image.getImageFileName(), image.getETag(), recorded, sourceWidth));
+        log.info("Generated variants {} of {} in {} ms", recorded, image.getImageFileName(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+
+        return generated;
+    }
+
+    private static byte[] resize(BufferedImage source, int width, String format) {
+        int height = Math.max(1, (int) Math.round(source.getHeight() * (double) width / source.getWidth()));
+        boolean alpha = "png".equals(format) || "gif".equals(format);
+        BufferedImage target = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            if (!alpha) {
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(0, 0, width, height);
+            }
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            if (!ImageIO.write(target, format, out)) {
+                throw new IllegalStateException("No image writer for " + format);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to write resized image", e);
+        }
+        return out.toByteArray();
+    }
+
+    private static List<Integer> generatedWidths(Image image) {
+        if (image.getDerivatives() == null || image.getDerivatives().isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Arrays.stream(image.getDerivatives().split(","))
+                .map(Integer::valueOf)
+                .collect(Collectors.toList());
+    }
+
+    private static String format(String extension) {
+        String format = extension == null ? "" : extension.toLowerCase(Locale.ROOT);
+        return "jpeg".equals(format) ? "jpg" : format;
+    }
+
+    private static String contentType(String extension) {
+        switch (format(extension)) {
+            case "png":
+                return "image/png";
+            case "gif":
+                return "image/gif";
+            case "bmp":
+                return "image/bmp";
+            default:
+                return "image/jpeg";
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static class Generated {
+        private final byte[] original;
+        private final Map<Integer, byte[]> variants = new HashMap<>();
+
+        Generated(byte[] original) {
+            this.original = original;
+        }
+    }
+}
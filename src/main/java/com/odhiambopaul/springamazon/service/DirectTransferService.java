@@ -0,0 +1,148 @@
+package com.odhiambopaul.springamazon.service;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.HttpMethod;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.odhiambopaul.springamazon.domain.DirectUpload;
+import com.odhiambopaul.springamazon.domain.Image;
+import com.odhiambopaul.springamazon.domain.UploadResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.net.URL;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Date;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Moves image bytes between clients and S3 without passing them through this service. Uploads go
+ * to a presigned PUT under a fresh random key and are recorded by a completion call once a HEAD
+ * confirms the object; downloads are redirected to a presigned GET.
+ *
+ * <p>The server never sees the bytes of a direct upload, so it cannot hash them: direct uploads
+ * are keyed by a random 32-digit hex key instead of their sha256 and are not deduplicated.
+ */
+@Service
+@Profile("!filesystem")
+@Slf4j
+public class DirectTransferService {
+
+    private static final Pattern OBJECT_KEY = Pattern.compile("[0-9a-f]{32}");
+    private static final String IMAGES_PREFIX = "images/";
+
+    private final AmazonS3 amazonS3;
+    private final ImageService imageService;
+    private final DerivativeService derivativeService;
+    private final String bucketName;
+    private final long expirySeconds;
+    private final long maxBytes;
+
+    public DirectTransferService(AmazonS3 amazonS3,
+                                 ImageService imageService,
+                                 DerivativeService derivativeService,
+                                 @Value("${aws.s3.bucketName}") String bucketName,
+                                 @Value("${image.direct.url-expiry-seconds}") long expirySeconds,
+                                 @Value("${image.direct.max-bytes}") long maxBytes) {
+        this.amazonS3 = amazonS3;
+        this.imageService = imageService;
+        this.derivativeService = derivativeService;
+        this.bucketName = bucketName;
+        this.expirySeconds = expirySeconds;
+        this.maxBytes = maxBytes;
+    }
+
+    public DirectUpload createUpload(String contentType) {
+        // checked before presigning, so no URL is handed out for a type completeUpload would reject
+        imageService.validateContentType(contentType);
+        String objectKey = UUID.randomUUID().toString().replace("-", "");
+        Instant expiresAt = Instant.now().plusSeconds(expirySeconds);
+        // the content type is part of the signature, the client has to send the same header
+        GeneratePresignedUrlRequest request = new GeneratePresignedUrlRequest(bucketName, IMAGES_PREFIX + objectKey);
+        URL url = amazonS3.generatePresignedUrl(request
+                .withMethod(HttpMethod.PUT)
+                .withContentType(contentType)
+                .withExpiration(Date.from(expiresAt)));
+        log.info("Direct upload {} presigned until {}", objectKey, expiresAt);
+
+        return DirectUpload.builder()
+                .objectKey(objectKey)
+                .url(url.toString())
+                .method(HttpMethod.PUT.name())
+                .headers(Collections.singletonMap(HttpHeaders.CONTENT_TYPE, contentType))
+                .expiresAt(expiresAt)
+                .build();
+    }
+
+    /**
+     * Verifies the uploaded object with a HEAD and records it like a regular upload. An object that
+     * is not an acceptable image is deleted again.
+     */
+    public Image completeUpload(String objectKey, String fileName, String description) {
+        if (!OBJECT_KEY.matcher(objectKey).matches()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, String.format("Upload '%s' not found", objectKey));
+        }
+        String key = IMAGES_PREFIX + objectKey;
+        ObjectMetadata metadata;
+        try {
+            metadata = amazonS3.getObjectMetadata(bucketName, key);
+        } catch (AmazonServiceException e) {
+            if (e.getStatusCode() == HttpStatus.NOT_FOUND.value()) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                        String.format("Upload '%s' not found", objectKey));
+            }
+            throw new IllegalStateException("Failed to verify the upload", e);
+        }
+
+        try {
+            if (metadata.getContentLength() > maxBytes) {
+                throw new IllegalStateException(String.format("Upload exceeds %d bytes", maxBytes));
+            }
+            UploadResult stored = UploadResult.builder()
+                    .url(amazonS3.getUrl(bucketName, key).toString())
+                    .eTag(metadata.getETag())
+                    .parts(1)
+                    .build();
+            Image image = imageService.recordStoredUpload(description, fileName, metadata.getContentLength(),
+                    metadata.getContentType(), objectKey, stored);
+            log.info("Direct upload {} recorded as {}", objectKey, fileName);
+            return image;
+        } catch (IllegalStateException e) {
+            log.error("Rejected direct upload {}, {}", objectKey, e.getMessage());
+            amazonS3.deleteObject(bucketName, key);
+            throw e;
+        }
+    }
+
+    /**
+     * Presigns a GET of the stored original, or of the variant when the requested width is already
+     * generated.
+     */
+    public URL presignDownload(String imageName, Integer width) {
+        Image image = imageService.getImageByName(imageName);
+        String path = image.getImagePath();
+        Integer variant = width == null ? null : derivativeService.resolveWidth(image, width);
+        if (variant != null && derivativeService.hasDerivative(image, variant)) {
+            path = derivativeService.derivativePath(image, variant);
+        }
+        // the path is "bucket/prefix", presigned requests take the bucket and the full key
+        int slash = path.indexOf('/');
+        String bucket = slash < 0 ? path : path.substring(0, slash);
+        String prefix = slash < 0 ? "" : path.substring(slash + 1) + "/";
+        return amazonS3.generatePresignedUrl(new GeneratePresignedUrlRequest(bucket, prefix + image.getObjectKey())
+                .withMethod(HttpMethod.GET)
+                .withExpiration(Date.from(Instant.now().plusSeconds(expirySeconds))));
+    }
+
+    public long getExpirySeconds() {
+        return expirySeconds;
+    }
+}
@@ -0,0 +1,162 @@
+package com.odhiambopaul.springamazon.service;
+
+import com.odhiambopaul.springamazon.domain.CacheTierStats;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.DigestUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-bounded LRU cache of image bytes on local disk. Entries are read back through memory-mapped
+ * buffers, so hits are served from the page cache without copying into the Java heap. The index is
+ * kept in memory only, the entry files left in the directory by a previous run are removed on startup.
+ */
+@Slf4j
+class DiskCacheTier {
+
+    private static final String ENTRY_SUFFIX = ".entry";
+    private static final String TEMP_PREFIX = "put-";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    DiskCacheTier(Path directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+        deleteStaleFiles();
+    }
+
+    /**
+     * Removes only the files this tier writes, the directory may be shared or misconfigured.
+     */
+    private void deleteStaleFiles() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (Files.isRegularFile(file) && (name.endsWith(ENTRY_SUFFIX)
+                        || name.startsWith(TEMP_PREFIX) && name.endsWith(TEMP_SUFFIX))) {
+                    deleteFile(file);
+                }
+            }
+        }
+    }
+
+    Entry get(String cacheKey) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(cacheKey);
+        }
+        if (entry == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return entry;
+    }
+
+    /**
+     * Maps the entry read-only. Returns {@code null} when the file has been evicted in the meantime.
+     */
+    ByteBuffer map(Entry entry) {
+        try (FileChannel channel = FileChannel.open(entry.getFile(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, entry.getSize());
+        } catch (IOException e) {
+            log.warn("Disk cache entry {} is gone, {}", entry.getFile(), e.getMessage());
+            return null;
+        }
+    }
+
+    void put(String cacheKey, CachedImage image) {
+        if (image.getBytes().length > maxBytes) {
+            return;
+        }
+        Path file = directory.resolve(
+                DigestUtils.md5DigestAsHex(cacheKey.getBytes(StandardCharsets.UTF_8)) + ENTRY_SUFFIX);
+        try {
+            Path temp = Files.createTempFile(directory, TEMP_PREFIX, TEMP_SUFFIX);
+            Files.write(temp, image.getBytes());
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Failed to write disk cache entry for {}, {}", cacheKey, e.getMessage());
+            return;
+        }
+        Entry entry = new Entry(file, image.getBytes().length, image.getContentType(), image.getETag(), image.getLastModified());
+        List<Entry> evicted = new ArrayList<>();
+        synchronized (this) {
+            Entry previous = entries.put(cacheKey, entry);
+            if (previous != null) {
+                usedBytes -= previous.getSize();
+            }
+            usedBytes += entry.getSize();
+            Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while (usedBytes > maxBytes && eldest.hasNext()) {
+                Entry victim = eldest.next().getValue();
+                eldest.remove();
+                usedBytes -= victim.getSize();
+                evicted.add(victim);
+            }
+        }
+        evictions.add(evicted.size());
+        evicted.forEach(victim -> deleteFile(victim.getFile()));
+    }
+
+    void remove(String cacheKey) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.remove(cacheKey);
+            if (entry != null) {
+                usedBytes -= entry.getSize();
+            }
+        }
+        if (entry != null) {
+            deleteFile(entry.getFile());
+        }
+    }
+
+    synchronized CacheTierStats stats() {
+        return new CacheTierStats("disk", hits.sum(), misses.sum(), evictions.sum(), entries.size(), usedBytes);
+    }
+
+    private void deleteFile(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete disk cache file {}, {}", file, e.getMessage());
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    static class Entry {
+        private final Path file;
+        private final long size;
+        private final String contentType;
+        private final String eTag;
+        private final Date lastModified;
+    }
+}
@@ -1,6 +1,10 @@
 package com.odhiambopaul.springamazon.service;
 
+import com.odhiambopaul.springamazon.domain.ImageContent;
+import com.odhiambopaul.springamazon.domain.UploadResult;
+
 import java.io.InputStream;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -11,6 +15,32 @@ public interface FileStoreService {
       Optional<Map<String, String>> optionalMetaData,
       InputStream inputStream);
 
+  /**
+   * Uploads a stream of known length. Objects larger than the configured multipart threshold
+   * are sent as a parallel multipart upload.
+   */
+  UploadResult upload(String path,
+      String fileName,
+      String contentType,
+      long contentLength,
+      Optional<Map<String, String>> optionalMetaData,
+      InputStream inputStream);
+
   byte[] download(String path, String key);
 
+  /**
+   * Opens the object for streaming. When {@code rangeStart} is set only the bytes
+   * {@code rangeStart..rangeEnd} are requested from the store, unless the {@code ifRange}
+   * validator no longer matches, in which case the whole object is returned.
+   */
+  ImageContent stream(String path, String key, Long rangeStart, Long rangeEnd, String ifRange);
+
+  void delete(String path, String key);
+
+  /**
+   * Deletes many objects under one path with multi-object deletes and returns the keys that could
+   * not be deleted.
+   */
+  List<String> deleteAll(String path, List<String> keys);
+
 }
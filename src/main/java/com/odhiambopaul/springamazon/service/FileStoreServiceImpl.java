@@ -3,22 +3,45 @@ package com.odhiambopaul.springamazon.service;
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.DeleteObjectRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
 import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectResult;
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectInputStream;
 import com.amazonaws.util.IOUtils;
-import lombok.AllArgsConstructor;
+import com.odhiambopaul.springamazon.domain.ImageContent;
+import com.odhiambopaul.springamazon.domain.UploadResult;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
-@AllArgsConstructor
+@RequiredArgsConstructor
 @Service
+@Profile("!filesystem")
 public class FileStoreServiceImpl implements FileStoreService {
+    private static final int MAX_DELETE_KEYS = 1000;
+
     private final AmazonS3 amazonS3;
+    private final S3MultipartUploader multipartUploader;
+    private final HedgedReader hedgedReader;
+
+    @Value("${aws.s3.multipart.threshold}")
+    private long multipartThreshold;
 
     public String upload(String path,
                        String fileName,
@@ -38,16 +61,102 @@ public class FileStoreServiceImpl implements FileStoreService {
         }
     }
 
+    public UploadResult upload(String path,
+                               String fileName,
+                               String contentType,
+                               long contentLength,
+                               Optional<Map<String, String>> optionalMetaData,
+                               InputStream inputStream) {
+        ObjectMetadata objectMetadata = new ObjectMetadata();
+        optionalMetaData.ifPresent(map -> map.forEach(objectMetadata::addUserMetadata));
+        objectMetadata.setContentType(contentType);
+        try {
+            if (contentLength > multipartThreshold) {
+                return multipartUploader.upload(path, fileName, objectMetadata, inputStream);
+            }
+            objectMetadata.setContentLength(contentLength);
+            PutObjectResult result = amazonS3.putObject(path, fileName, inputStream, objectMetadata);
+            return UploadResult.builder()
+                    .url(amazonS3.getUrl(path, fileName).toString())
+                    .eTag(result.getETag())
+                    .parts(1)
+                    .build();
+        } catch (AmazonServiceException e) {
+            throw new IllegalStateException("Failed to upload the file", e);
+        }
+    }
+
     public byte[] download(String path, String key) {
         try {
-            S3Object object = amazonS3.getObject(path, key);
-            S3ObjectInputStream objectContent = object.getObjectContent();
-            return IOUtils.toByteArray(objectContent);
-        } catch (AmazonServiceException | IOException e) {
+            // only the time to the response headers is hedged, body transfer time grows with the object size
+            S3Object object = hedgedReader.read(() -> amazonS3.getObject(path, key), FileStoreServiceImpl::abort);
+            try (S3ObjectInputStream objectContent = object.getObjectContent()) {
+                return IOUtils.toByteArray(objectContent);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to download the file", e);
+            }
+        } catch (AmazonServiceException e) {
+            throw new IllegalStateException("Failed to download the file", e);
+        }
+    }
+
+    public ImageContent stream(String path, String key, Long rangeStart, Long rangeEnd, String ifRange) {
+        try {
+            GetObjectRequest request = new GetObjectRequest(path, key);
+            if (rangeStart != null) {
+                if (!applyIfRange(request, ifRange)) {
+                    return stream(path, key, null, null, null);
+                }
+                request.setRange(rangeStart, rangeEnd);
+            }
+            S3Object object = hedgedReader.read(() -> amazonS3.getObject(request), FileStoreServiceImpl::abort);
+            if (object == null) {
+                // If-Range validator did not match, the client has to get the whole object
+                return stream(path, key, null, null, null);
+            }
+            ObjectMetadata metadata = object.getObjectMetadata();
+            return ImageContent.builder()
+                    .inputStream(object.getObjectContent())
+                    .contentType(metadata.getContentType())
+                    .contentLength(metadata.getContentLength())
+                    .instanceLength(metadata.getInstanceLength())
+                    .rangeStart(rangeStart)
+                    .rangeEnd(rangeStart == null ? null : rangeStart + metadata.getContentLength() - 1)
+                    .eTag(metadata.getETag())
+                    .lastModified(metadata.getLastModified())
+                    .build();
+        } catch (AmazonServiceException e) {
             throw new IllegalStateException("Failed to download the file", e);
         }
     }
 
+    private static void abort(S3Object object) {
+        if (object != null) {
+            object.getObjectContent().abort();
+        }
+    }
+
+    private boolean applyIfRange(GetObjectRequest request, String ifRange) {
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("W/")) {
+            // weak validators never match If-Range
+            return false;
+        }
+        if (ifRange.startsWith("\"")) {
+            request.withMatchingETagConstraint(ifRange);
+            return true;
+        }
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME);
+            request.withUnmodifiedSinceConstraint(Date.from(date.toInstant()));
+            return true;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
     public void delete(String path, String key) {
         try {
             amazonS3.deleteObject(new DeleteObjectRequest(path, key));
@@ -56,4 +165,28 @@ public class FileStoreServiceImpl implements FileStoreService {
         }
     }
 
+    public List<String> deleteAll(String path, List<String> keys) {
+        // the path is "bucket/prefix", multi-object deletes take the bucket and full keys
+        int slash = path.indexOf('/');
+        String bucket = slash < 0 ? path : path.substring(0, slash);
+        String prefix = slash < 0 ? "" : path.substring(slash + 1) + "/";
+        List<String> failed = new ArrayList<>();
+        for (int from = 0; from < keys.size(); from += MAX_DELETE_KEYS) {
+            List<String> chunk = keys.subList(from, Math.min(from + MAX_DELETE_KEYS, keys.size()));
+            DeleteObjectsRequest request = new DeleteObjectsRequest(bucket)
+                    .withKeys(chunk.stream()
+                            .map(key -> new DeleteObjectsRequest.KeyVersion(prefix + key))
+                            .collect(Collectors.toList()))
+                    .withQuiet(true);
+            try {
+                amazonS3.deleteObjects(request);
+            } catch (MultiObjectDeleteException e) {
+                e.getErrors().forEach(error -> failed.add(error.getKey().substring(prefix.length())));
+            } catch (AmazonServiceException e) {
+                failed.addAll(chunk);
+            }
+        }
+        return failed;
+    }
+
 }
@@ -0,0 +1,224 @@
+package com.odhiambopaul.springamazon.service;
+
+import com.odhiambopaul.springamazon.domain.ImageContent;
+import com.odhiambopaul.springamazon.domain.UploadResult;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * Keeps objects in a local directory tree instead of S3, for edge nodes and test rigs. The
+ * "bucket/prefix" path callers pass becomes a directory under the root. Objects are written to a
+ * temporary file and renamed into place, so readers never see a partial object; the ETag and
+ * content type live in a sidecar file under {@code .meta}. Streamed content refers to the file
+ * itself, so it can be sent without passing through the heap.
+ */
+@Service
+@Profile("filesystem")
+@Slf4j
+public class FilesystemFileStoreService implements FileStoreService {
+
+    private static final String META_DIRECTORY = ".meta";
+    private static final String ETAG = "etag";
+    private static final String CONTENT_TYPE = "content-type";
+
+    private final Path root;
+
+    public FilesystemFileStoreService(@Value("${image.filesystem.root}") String root) throws IOException {
+        this.root = Files.createDirectories(Paths.get(root)).toAbsolutePath().normalize();
+        log.info("Storing images under {}", this.root);
+    }
+
+    public String upload(String path,
+                         String fileName,
+                         Optional<Map<String, String>> optionalMetaData,
+                         InputStream inputStream) {
+        String contentType = optionalMetaData.map(metadata -> metadata.get("Content-Type")).orElse(null);
+        return write(path, fileName, contentType, inputStream).getUrl();
+    }
+
+    public UploadResult upload(String path,
+                               String fileName,
+                               String contentType,
+                               long contentLength,
+                               Optional<Map<String, String>> optionalMetaData,
+                               InputStream inputStream) {
+        return write(path, fileName, contentType, inputStream);
+    }
+
+    public byte[] download(String path, String key) {
+        try {
+            return Files.readAllBytes(resolve(path, key));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to download the file", e);
+        }
+    }
+
+    public ImageContent stream(String path, String key, Long rangeStart, Long rangeEnd, String ifRange) {
+        Path file = resolve(path, key);
+        try {
+            long length = Files.size(file);
+            Properties metadata = readMetadata(file);
+            String eTag = metadata.getProperty(ETAG);
+            Date lastModified = Date.from(Files.getLastModifiedTime(file).toInstant().truncatedTo(ChronoUnit.SECONDS));
+            boolean ranged = rangeStart != null && ifRangeMatches(ifRange, eTag, lastModified);
+            long start = ranged ? rangeStart : 0;
+            long end = ranged && rangeEnd != null ? Math.min(rangeEnd, length - 1) : length - 1;
+            return ImageContent.builder()
+                    .file(file)
+                    .filePosition(start)
+                    .contentType(metadata.getProperty(CONTENT_TYPE))
+                    .contentLength(end - start + 1)
+                    .instanceLength(length)
+                    .rangeStart(ranged ? start : null)
+                    .rangeEnd(ranged ? end : null)
+                    .eTag(eTag)
+                    .lastModified(lastModified)
+                    .build();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to download the file", e);
+        }
+    }
+
+    public void delete(String path, String key) {
+        Path file = resolve(path, key);
+        try {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(metadataPath(file));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to delete the file", e);
+        }
+    }
+
+    public List<String> deleteAll(String path, List<String> keys) {
+        List<String> failed = new ArrayList<>();
+        for (String key : keys) {
+            try {
+                delete(path, key);
+            } catch (IllegalStateException e) {
+                failed.add(key);
+            }
+        }
+        return failed;
+    }
+
+    private UploadResult write(String path, String key, String contentType, InputStream inputStream) {
+        Path target = resolve(path, key);
+        Path temp = null;
+        try {
+            Files.createDirectories(target.getParent());
+            temp = Files.createTempFile(target.getParent(), ".upload-", ".tmp");
+            MessageDigest md5 = DigestUtils.getMd5Digest();
+            try (InputStream in = new DigestInputStream(inputStream, md5)) {
+                Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            String eTag = Hex.encodeHexString(md5.digest());
+            // the object goes first, a sidecar must never describe bytes that are not in place yet
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            writeMetadata(target, eTag, contentType);
+            return UploadResult.builder()
+                    .url(target.toUri().toString())
+                    .eTag(eTag)
+                    .parts(1)
+                    .build();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to upload the file", e);
+        } finally {
+            deleteTemp(temp);
+        }
+    }
+
+    private void writeMetadata(Path target, String eTag, String contentType) throws IOException {
+        Path metadataFile = metadataPath(target);
+        Files.createDirectories(metadataFile.getParent());
+        Properties metadata = new Properties();
+        metadata.setProperty(ETAG, eTag);
+        if (contentType != null) {
+            metadata.setProperty(CONTENT_TYPE, contentType);
+        }
+        Path temp = Files.createTempFile(metadataFile.getParent(), ".meta-", ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                metadata.store(out, null);
+            }
+            Files.move(temp, metadataFile, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            deleteTemp(temp);
+        }
+    }
+
+    private Properties readMetadata(Path file) throws IOException {
+        Properties metadata = new Properties();
+        try (InputStream in = Files.newInputStream(metadataPath(file))) {
+            metadata.load(in);
+        } catch (NoSuchFileException e) {
+            // objects copied into the tree by hand have no sidecar
+        }
+        return metadata;
+    }
+
+    private Path resolve(String path, String key) {
+        Path file = root.resolve(path).resolve(key).normalize();
+        if (!file.startsWith(root) || file.equals(root)) {
+            throw new IllegalStateException(String.format("Invalid object location %s/%s", path, key));
+        }
+        return file;
+    }
+
+    private static Path metadataPath(Path file) {
+        return file.getParent().resolve(META_DIRECTORY).resolve(file.getFileName() + ".properties");
+    }
+
+    private static void deleteTemp(Path temp) {
+        if (temp == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(temp);
+        } catch (IOException e) {
+            log.warn("Failed to delete temporary file {}, {}", temp, e.getMessage());
+        }
+    }
+
+    private static boolean ifRangeMatches(String ifRange, String eTag, Date lastModified) {
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals("\"" + eTag + "\"");
+        }
+        if (ifRange.startsWith("W/")) {
+            return false;
+        }
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return !lastModified.toInstant().isAfter(date.toInstant());
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+}
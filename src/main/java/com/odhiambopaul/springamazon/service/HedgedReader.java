@@ -0,0 +1,244 @@
+package com.odhiambopaul.springamazon.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Hedges S3 reads against the latency tail. A read that has not answered within the tracked latency
+ * percentile of recent reads gets a second identical attempt; the first successful one is returned
+ * and the other is cancelled, or discarded if it still completes. Hedges draw from a budget that
+ * grows by {@code max-rate} per read, so they never exceed that share of the read load.
+ */
+@Component
+@Slf4j
+public class HedgedReader {
+
+    private static final int RECOMPUTE_EVERY = 64;
+    private static final double MAX_BUDGET = 10;
+
+    private final boolean enabled;
+    private final double percentile;
+    private final double maxRate;
+    private final long minDelayNanos;
+    private final long[] samples;
+    private final ThreadPoolExecutor executor;
+    private final Counter reads;
+    private final Counter hedges;
+    private final Counter wins;
+    private final Counter capped;
+
+    private int sampleCount;
+    private double budget;
+    private volatile long delayNanos;
+
+    public HedgedReader(@Value("${aws.s3.hedge.enabled}") boolean enabled,
+                        @Value("${aws.s3.hedge.percentile}") double percentile,
+                        @Value("${aws.s3.hedge.max-rate}") double maxRate,
+                        @Value("${aws.s3.hedge.min-delay-ms}") long minDelayMillis,
+                        @Value("${aws.s3.hedge.window}") int window,
+                        @Value("${aws.s3.hedge.threads}") int threads,
+                        MeterRegistry registry) {
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.maxRate = maxRate;
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMillis);
+        this.samples = new long[window];
+        this.executor = enabled
+                ? new ThreadPoolExecutor(0, threads, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                        new CustomizableThreadFactory("s3-hedged-read-"))
+                : null;
+        this.reads = Counter.builder("aws.s3.hedge.reads")
+                .description("S3 reads going through the hedged reader")
+                .register(registry);
+        this.hedges = Counter.builder("aws.s3.hedge.attempts")
+                .description("Second attempts fired for slow S3 reads")
+                .register(registry);
+        this.wins = Counter.builder("aws.s3.hedge.wins")
+                .description("Hedged S3 reads answered by the second attempt")
+                .register(registry);
+        this.capped = Counter.builder("aws.s3.hedge.capped")
+                .description("Slow S3 reads not hedged because the hedge budget was spent")
+                .register(registry);
+        Gauge.builder("aws.s3.hedge.rate", this, reader -> reader.reads.count() == 0
+                        ? 0 : reader.hedges.count() / reader.reads.count())
+                .description("Share of S3 reads that were hedged")
+                .register(registry);
+        Gauge.builder("aws.s3.hedge.delay", this, reader -> reader.delayNanos / 1_000_000.0)
+                .description("Current hedge delay in milliseconds")
+                .baseUnit("milliseconds")
+                .register(registry);
+    }
+
+    /**
+     * Runs the read, hedging it when it is slower than the tracked percentile. Values of the losing
+     * attempt are handed to {@code discard} so their resources can be released.
+     */
+    public <T> T read(Supplier<T> attempt, Consumer<T> discard) {
+        if (!enabled) {
+            return attempt.get();
+        }
+        reads.increment();
+        earnBudget();
+        long delay = delayNanos;
+        if (delay == 0) {
+            // still warming up, no percentile to hedge against yet
+            return timed(attempt);
+        }
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        AtomicReference<RuntimeException> error = new AtomicReference<>();
+        AtomicBoolean hedged = new AtomicBoolean();
+        long start = System.nanoTime();
+        Future<?> primary;
+        try {
+            primary = executor.submit(() ->
+                    attempt(attempt, discard, result, failures, error, hedged, start, false));
+        } catch (RejectedExecutionException e) {
+            return timed(attempt);
+        }
+        try {
+            return result.get(delay, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // fall through and hedge
+        } catch (InterruptedException e) {
+            primary.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading from S3", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+
+        Future<?> hedge = null;
+        if (!result.isDone()) {
+            if (spendBudget()) {
+                hedged.set(true);
+                try {
+                    hedge = executor.submit(() ->
+                            attempt(attempt, discard, result, failures, error, hedged, start, true));
+                    hedges.increment();
+                } catch (RejectedExecutionException e) {
+                    log.debug("No thread left to hedge the S3 read");
+                }
+            } else {
+                capped.increment();
+            }
+        }
+        if (hedge == null) {
+            // the primary is the only attempt, a single failure is final
+            if (failures.incrementAndGet() == 2) {
+                result.completeExceptionally(error.get());
+            }
+        }
+        try {
+            T value = result.get();
+            if (!primary.isDone()) {
+                primary.cancel(true);
+            }
+            if (hedge != null && !hedge.isDone()) {
+                hedge.cancel(true);
+            }
+            return value;
+        } catch (InterruptedException e) {
+            primary.cancel(true);
+            if (hedge != null) {
+                hedge.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading from S3", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    private <T> void attempt(Supplier<T> attempt, Consumer<T> discard, CompletableFuture<T> result,
+                             AtomicInteger failures, AtomicReference<RuntimeException> error,
+                             AtomicBoolean hedged, long start, boolean isHedge) {
+        T value;
+        try {
+            value = attempt.get();
+        } catch (RuntimeException e) {
+            // without a hedge in flight a failure is final right away, so a fast error is not held back
+            // until the hedge delay; otherwise the second failure is final
+            error.set(e);
+            if (!hedged.get() || failures.incrementAndGet() == 2) {
+                result.completeExceptionally(e);
+            }
+            return;
+        }
+        if (result.complete(value)) {
+            if (isHedge) {
+                wins.increment();
+            }
+            // a hedge win records the primary's latency so far, a lower bound of what it would have taken
+            record(System.nanoTime() - start);
+        } else {
+            discard.accept(value);
+        }
+    }
+
+    private <T> T timed(Supplier<T> attempt) {
+        long start = System.nanoTime();
+        T value = attempt.get();
+        record(System.nanoTime() - start);
+        return value;
+    }
+
+    private synchronized void record(long nanos) {
+        samples[sampleCount % samples.length] = nanos;
+        sampleCount++;
+        if (sampleCount >= samples.length && sampleCount % RECOMPUTE_EVERY == 0) {
+            long[] sorted = samples.clone();
+            Arrays.sort(sorted);
+            int index = (int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1);
+            delayNanos = Math.max(minDelayNanos, sorted[Math.max(0, index)]);
+        }
+    }
+
+    private synchronized void earnBudget() {
+        budget = Math.min(MAX_BUDGET, budget + maxRate);
+    }
+
+    private synchronized boolean spendBudget() {
+        if (budget < 1) {
+            return false;
+        }
+        budget--;
+        return true;
+    }
+
+    private static RuntimeException unwrap(ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+            return (RuntimeException) e.getCause();
+        }
+        return new IllegalStateException("S3 read failed", e.getCause());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
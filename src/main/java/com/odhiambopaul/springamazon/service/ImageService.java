@@ -2,25 +2,93 @@ package com.odhiambopaul.springamazon.service;
 
 import com.amazonaws.services.sns.model.SubscribeResult;
 import com.amazonaws.services.sns.model.UnsubscribeResult;
+import com.odhiambopaul.springamazon.domain.BatchUploadResult;
+import com.odhiambopaul.springamazon.domain.BulkDeleteRequest;
+import com.odhiambopaul.springamazon.domain.BulkDeleteResult;
 import com.odhiambopaul.springamazon.domain.Image;
+import com.odhiambopaul.springamazon.domain.ImageContent;
+import com.odhiambopaul.springamazon.domain.ImagePage;
+import com.odhiambopaul.springamazon.domain.ImageSearchRequest;
+import com.odhiambopaul.springamazon.domain.NotifyTicket;
+import com.odhiambopaul.springamazon.domain.UploadResult;
+import org.springframework.http.HttpRange;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 public interface ImageService {
     Image uploadImage(String description, MultipartFile file);
 
+    CompletableFuture<Image> uploadImageAsync(String description, MultipartFile file);
+
+    /**
+     * Records an upload whose bytes were stored without passing through this service, such as a
+     * direct upload to a presigned URL. The object must already exist under the images path.
+     */
+    Image recordStoredUpload(String description, String fileName, long size, String contentType,
+                             String objectKey, UploadResult stored);
+
+    /**
+     * Rejects content types other than the accepted image formats.
+     */
+    void validateContentType(String contentType);
+
+    CompletableFuture<List<BatchUploadResult>> uploadImagesAsync(String description, List<MultipartFile> files);
+
+    Image getImageByName(String imageName);
+
     byte[] downloadImageByName(String imageName);
 
+    ImageContent streamImageByName(String imageName, HttpRange range, String ifRange);
+
+    CompletableFuture<ImageContent> streamImageByNameAsync(String imageName, Integer width, HttpRange range, String ifRange);
+
+    /**
+     * The ETag of the representation served for {@code width}, derived from the variant the width
+     * resolves to, so widths served by the same variant share one ETag.
+     */
+    String getImageETag(Image image, Integer width);
+
     Long deleteImageByName(String imageName);
 
+    CompletableFuture<Long> deleteImageByNameAsync(String imageName);
+
+    BulkDeleteResult deleteImages(BulkDeleteRequest request);
+
     List<Image> getAllImages();
 
+    ImagePage getImagePage(Long after, int limit);
+
+    ImagePage searchImages(ImageSearchRequest request, Long after, String afterKey, int limit);
+
+    long exportImages(OutputStream outputStream) throws IOException;
+
     byte[] getRandomImage();
 
+    /**
+     * Opens a random image. Images in a local file store are opened right away, so the returned
+     * future is already complete and the file can be sent with sendfile.
+     */
+    CompletableFuture<ImageContent> streamRandomImageAsync();
+
     SubscribeResult subscribeEmail(String email);
 
+    CompletableFuture<SubscribeResult> subscribeEmailAsync(String email);
+
     UnsubscribeResult unsubscribeEmail(String email);
 
+    CompletableFuture<UnsubscribeResult> unsubscribeEmailAsync(String email);
+
     String triggerLambda();
+
+    CompletableFuture<String> triggerLambdaAsync();
+
+    NotifyTicket triggerLambdaEvent(Map<String, Object> detail);
+
+    Optional<NotifyTicket> getNotifyTicket(String id);
 }
@@ -4,35 +4,69 @@ import com.amazonaws.services.lambda.AWSLambdaClient;
 import com.amazonaws.services.lambda.model.InvokeRequest;
 import com.amazonaws.services.lambda.model.InvokeResult;
 import com.amazonaws.services.sns.AmazonSNSClient;
-import com.amazonaws.services.sns.model.ListSubscriptionsResult;
 import com.amazonaws.services.sns.model.SubscribeRequest;
 import com.amazonaws.services.sns.model.SubscribeResult;
-import com.amazonaws.services.sns.model.Subscription;
 import com.amazonaws.services.sns.model.UnsubscribeRequest;
 import com.amazonaws.services.sns.model.UnsubscribeResult;
-import com.amazonaws.services.sqs.AmazonSQSClient;
-import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.odhiambopaul.springamazon.domain.BatchUploadResult;
+import com.odhiambopaul.springamazon.domain.BulkDeleteRequest;
+import com.odhiambopaul.springamazon.domain.BulkDeleteResult;
+import com.odhiambopaul.springamazon.domain.ContentObject;
 import com.odhiambopaul.springamazon.domain.Image;
+import com.odhiambopaul.springamazon.domain.ImageContent;
+import com.odhiambopaul.springamazon.domain.ImagePage;
+import com.odhiambopaul.springamazon.domain.ImageSearchRequest;
+import com.odhiambopaul.springamazon.domain.NotifyTicket;
+import com.odhiambopaul.springamazon.domain.OutboxMessage;
+import com.odhiambopaul.springamazon.domain.UploadResult;
 import com.odhiambopaul.springamazon.repositories.ImageRepository;
+import com.odhiambopaul.springamazon.repositories.OutboxMessageRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FilenameUtils;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Instant;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.Random;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static org.apache.http.entity.ContentType.IMAGE_BMP;
 import static org.apache.http.entity.ContentType.IMAGE_GIF;
@@ -45,11 +79,23 @@ import static org.apache.http.entity.ContentType.IMAGE_PNG;
 @Slf4j
 public class ImageServiceImpl implements ImageService {
 
-  private final FileStoreServiceImpl fileStore;
+  private static final int BULK_DELETE_CHUNK = 1000;
+
+  private final FileStoreService fileStore;
+  private final AsyncFileStoreService asyncFileStore;
+  private final TransactionTemplate transactionTemplate;
   private final ImageRepository repository;
+  private final RandomImageSelector randomImageSelector;
+  private final DerivativeService derivativeService;
+  private final ContentObjectService contentObjects;
   private final AmazonSNSClient amazonSNSClient;
-  private final AmazonSQSClient amazonSQSClient;
+  private final SubscriptionIndex subscriptionIndex;
+  private final OutboxMessageRepository outboxRepository;
   private final AWSLambdaClient awsLambdaClient;
+  private final LambdaNotifier lambdaNotifier;
+  private final Bulkhead s3Bulkhead;
+  private final Bulkhead snsBulkhead;
+  private final Bulkhead lambdaBulkhead;
 
   private final ObjectMapper mapper;
 
@@ -60,60 +106,348 @@ public class ImageServiceImpl implements ImageService {
   @Value("${aws.sns.topic.arn}")
   private String topicArn;
 
-  @Value("${aws.sqs.url}")
-  private String sqsUrl;
-
   @Value("${aws.lambda.arn}")
   private String lambdaArn;
 
+  @Value("${image.listing.max-page-size}")
+  private int maxPageSize;
+
+  @Value("${image.batch.parallelism}")
+  private int batchParallelism;
+
+  @Value("${image.batch.max-files}")
+  private int batchMaxFiles;
+
   @Override
   public Image uploadImage(String description, MultipartFile file) {
+    validateImage(file);
 
+    String path = imagesPath();
+    try {
+      String objectKey = contentObjects.hash(file);
+      UploadResult result = contentObjects.exists(objectKey)
+          ? null
+          : fileStore.upload(path, objectKey, file.getContentType(), file.getSize(),
+              Optional.of(uploadMetadata(file)), file.getInputStream());
+
+      return recordUpload(description, path, file.getOriginalFilename(), file.getSize(), file.getContentType(),
+          objectKey, result);
+    } catch (RuntimeException | IOException e) {
+      log.error("Failed to upload file, {}", e.getMessage());
+      throw new IllegalStateException("Failed to upload file", e);
+    }
+  }
+
+  @Override
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public CompletableFuture<Image> uploadImageAsync(String description, MultipartFile file) {
+    validateImage(file);
+
+    String path = imagesPath();
+    String objectKey = contentObjects.hash(file);
+    CompletableFuture<UploadResult> upload;
+    if (contentObjects.exists(objectKey)) {
+      upload = CompletableFuture.completedFuture(null);
+    } else {
+      InputStream inputStream;
+      try {
+        inputStream = file.getInputStream();
+      } catch (IOException e) {
+        log.error("Failed to upload file, {}", e.getMessage());
+        throw new IllegalStateException("Failed to upload file", e);
+      }
+      upload = asyncFileStore.upload(path, objectKey, file.getContentType(), file.getSize(),
+          Optional.of(uploadMetadata(file)), inputStream);
+    }
+    return upload
+        .thenApply(result -> transactionTemplate.execute(
+            status -> recordUpload(description, path, file.getOriginalFilename(), file.getSize(),
+                file.getContentType(), objectKey, result)))
+        .whenComplete((image, e) -> {
+          if (e != null) {
+            log.error("Failed to upload file, {}", e.getMessage());
+          }
+        });
+  }
+
+  private void validateImage(MultipartFile file) {
     if (file.isEmpty()) {
       throw new IllegalStateException("Cannot upload empty file");
     }
+    validateContentType(file.getContentType());
+  }
 
+  @Override
+  public void validateContentType(String contentType) {
     if (!Arrays.asList(IMAGE_PNG.getMimeType(),
         IMAGE_BMP.getMimeType(),
         IMAGE_GIF.getMimeType(),
-        IMAGE_JPEG.getMimeType()).contains(file.getContentType())) {
+        IMAGE_JPEG.getMimeType()).contains(contentType)) {
       throw new IllegalStateException("FIle uploaded is not an image");
     }
+  }
 
+  private Map<String, String> uploadMetadata(MultipartFile file) {
     Map<String, String> metadata = new HashMap<>();
     metadata.put("Content-Type", file.getContentType());
     metadata.put("Content-Length", String.valueOf(file.getSize()));
+    return metadata;
+  }
+
+  private String imagesPath() {
+    return String.format("%s/%s", bucketName, "images");
+  }
+
+  @Override
+  public Image recordStoredUpload(String description, String fileName, long size, String contentType,
+      String objectKey, UploadResult stored) {
+    if (size == 0) {
+      throw new IllegalStateException("Cannot upload empty file");
+    }
+    validateContentType(contentType);
+    return recordUpload(description, imagesPath(), fileName, size, contentType, objectKey, stored);
+  }
+
+  private Image recordUpload(String description, String path, String fileName, long size, String contentType,
+      String objectKey, UploadResult result) {
+    Image saved = repository.save(prepareUpload(description, path, fileName, size, contentType, objectKey, result));
+    publishUploads(Collections.singletonList(saved));
+    return saved;
+  }
+
+  /**
+   * Builds the image row for an upload. {@code result} is {@code null} when the content was already
+   * stored and the upload was skipped; the row then shares the stored object and its variants.
+   */
+  private Image prepareUpload(String description, String path, String fileName, long size, String contentType,
+      String objectKey, UploadResult result) {
+    ContentObject content = contentObjects.acquire(objectKey, path, size, contentType, result);
+    Image existing = repository.findByImageFileName(fileName);
+    if (existing != null && existing.getObjectKey() != null && contentObjects.release(existing.getObjectKey())) {
+      contentObjects.deleteStoredAfterCommit(existing);
+    }
+    Image sibling = result == null ? repository.findFirstByObjectKeyAndDerivativesIsNotNull(objectKey) : null;
+    return Image.builder()
+        .id(existing == null ? null : existing.getId())
+        .description(description)
+        .imagePath(content.getImagePath())
+        .imageFileName(fileName)
+        .imageExtension(FilenameUtils.getExtension(fileName))
+        .url(content.getUrl())
+        .objectKey(objectKey)
+        .imageSize(size)
+        .updateDate(LocalDate.now())
+        .eTag(content.getETag())
+        .lastModified(Instant.now().truncatedTo(ChronoUnit.SECONDS))
+        .imageWidth(sibling == null ? null : sibling.getImageWidth())
+        .derivatives(sibling == null ? null : sibling.getDerivatives())
+        .build();
+  }
+
+  private void publishUploads(List<Image> saved) {
+    List<OutboxMessage> notifications = new ArrayList<>(saved.size());
+    for (Image image : saved) {
+      randomImageSelector.evict(image.getImageFileName());
+      if (image.getDerivatives() == null) {
+        derivativeService.generateAfterCommit(image);
+      }
+      try {
+        notifications.add(OutboxMessage.builder()
+            .payload(mapper.writeValueAsString(image))
+            .nextAttemptAt(Instant.now())
+            .build());
+      } catch (JsonProcessingException e) {
+        throw new IllegalStateException("Failed to serialize upload notification", e);
+      }
+    }
+    outboxRepository.saveAll(notifications);
+  }
+
+  @Override
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public CompletableFuture<List<BatchUploadResult>> uploadImagesAsync(String description, List<MultipartFile> files) {
+    if (files.isEmpty() || files.size() > batchMaxFiles) {
+      throw new IllegalStateException(String.format("A batch must contain 1 to %d files", batchMaxFiles));
+    }
+
+    String path = imagesPath();
+    List<PendingUpload> pending = new ArrayList<>(files.size());
+    Set<String> fileNames = new HashSet<>();
+    for (MultipartFile file : files) {
+      PendingUpload upload = new PendingUpload(file);
+      if (!fileNames.add(file.getOriginalFilename())) {
+        upload.error = "Duplicate file name in batch";
+      } else {
+        try {
+          validateImage(file);
+        } catch (IllegalStateException e) {
+          upload.error = e.getMessage();
+        }
+      }
+      pending.add(upload);
+    }
+
+    Queue<PendingUpload> queue = pending.stream()
+        .filter(upload -> upload.error == null)
+        .collect(Collectors.toCollection(ConcurrentLinkedQueue::new));
+    Map<String, CompletableFuture<UploadResult>> transfers = new ConcurrentHashMap<>();
+    // each worker uploads one file at a time, so at most batchParallelism transfers are in flight
+    CompletableFuture<?>[] workers = IntStream.range(0, Math.min(batchParallelism, queue.size()))
+        .mapToObj(i -> uploadNext(queue, path, transfers))
+        .toArray(CompletableFuture[]::new);
+    return CompletableFuture.allOf(workers)
+        .thenApply(v -> recordBatch(description, path, pending))
+        .whenComplete((results, e) -> {
+          if (e != null) {
+            log.error("Failed to upload batch, {}", e.getMessage());
+          }
+        });
+  }
 
-    String path = String.format("%s/%s", bucketName, "images");
+  private CompletableFuture<Void> uploadNext(Queue<PendingUpload> queue, String path,
+      Map<String, CompletableFuture<UploadResult>> transfers) {
+    PendingUpload upload = queue.poll();
+    if (upload == null) {
+      return CompletableFuture.completedFuture(null);
+    }
+    CompletableFuture<UploadResult> transfer;
     try {
-      String url = fileStore.upload(path, file.getOriginalFilename(), Optional.of(metadata), file.getInputStream());
+      upload.objectKey = contentObjects.hash(upload.file);
+      // identical files in one batch share a single transfer
+      transfer = contentObjects.exists(upload.objectKey)
+          ? CompletableFuture.completedFuture(null)
+          : transfers.computeIfAbsent(upload.objectKey, key -> startTransfer(path, key, upload.file));
+    } catch (RuntimeException e) {
+      transfer = CompletableFuture.failedFuture(e);
+    }
+    return transfer
+        .handle((result, e) -> {
+          if (e != null) {
+            log.error("Failed to upload file {}, {}", upload.file.getOriginalFilename(), e.getMessage());
+            upload.error = "Failed to upload file";
+          } else {
+            upload.result = result;
+          }
+          return null;
+        })
+        .thenCompose(v -> uploadNext(queue, path, transfers));
+  }
 
-      Image image = Image.builder()
-          .description(description)
-          .imagePath(path)
-          .imageFileName(file.getOriginalFilename())
-          .imageExtension(FilenameUtils.getExtension(file.getOriginalFilename()))
-              .url(url)
-          .imageSize(file.getSize())
-          .updateDate(LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd")))
-          .build();
+  private CompletableFuture<UploadResult> startTransfer(String path, String objectKey, MultipartFile file) {
+    try {
+      return asyncFileStore.upload(path, objectKey, file.getContentType(), file.getSize(),
+          Optional.of(uploadMetadata(file)), file.getInputStream());
+    } catch (IOException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
 
-      repository.save(image);
+  /**
+   * Records the batch in one transaction, so the image rows go out as JDBC batches. When that fails
+   * the files are recorded again one transaction each, so a failing row only fails its own file. A newly
+   * stored object whose row could not be recorded is removed again unless another upload references it.
+   */
+  private List<BatchUploadResult> recordBatch(String description, String path, List<PendingUpload> pending) {
+    List<PendingUpload> accepted = pending.stream()
+        .filter(upload -> upload.error == null)
+        .collect(Collectors.toList());
+    if (!accepted.isEmpty()) {
+      try {
+        List<Image> saved = transactionTemplate.execute(status -> recordAll(description, path, accepted));
+        Iterator<Image> images = saved.iterator();
+        accepted.forEach(upload -> upload.image = images.next());
+      } catch (RuntimeException e) {
+        log.warn("Failed to record batch at once, recording file by file, {}", e.getMessage());
+        accepted.forEach(upload -> recordOne(description, path, upload));
+      }
+    }
 
-      amazonSQSClient.sendMessage(new SendMessageRequest(sqsUrl, mapper.writeValueAsString(image)));
+    List<BatchUploadResult> results = new ArrayList<>(pending.size());
+    Set<String> unrecorded = new HashSet<>();
+    int recorded = 0;
+    for (PendingUpload upload : pending) {
+      BatchUploadResult.BatchUploadResultBuilder result = BatchUploadResult.builder()
+          .fileName(upload.file.getOriginalFilename());
+      if (upload.image == null) {
+        if (upload.result != null) {
+          unrecorded.add(upload.objectKey);
+        }
+        results.add(result.status(BatchUploadResult.Status.FAILED).error(upload.error).build());
+      } else {
+        results.add(result
+            .status(upload.result == null ? BatchUploadResult.Status.DEDUPLICATED : BatchUploadResult.Status.UPLOADED)
+            .image(upload.image)
+            .build());
+        recorded++;
+      }
+    }
+    // checked after the loop, since identical files in the batch share one stored object
+    unrecorded.forEach(objectKey -> deleteUnrecorded(path, objectKey));
+    log.info("Batch uploaded, {} of {} files", recorded, pending.size());
 
-      return repository.findByImageFileName(image.getImageFileName());
-    } catch (RuntimeException | IOException e) {
-      log.error("Failed to upload file, {}", e.getMessage());
-      throw new IllegalStateException("Failed to upload file", e);
+    return results;
+  }
+
+  private List<Image> recordAll(String description, String path, List<PendingUpload> uploads) {
+    List<Image> prepared = new ArrayList<>(uploads.size());
+    for (PendingUpload upload : uploads) {
+      prepared.add(prepareUpload(description, path, upload.file.getOriginalFilename(), upload.file.getSize(),
+          upload.file.getContentType(), upload.objectKey, upload.result));
+    }
+    List<Image> saved = new ArrayList<>(prepared.size());
+    repository.saveAll(prepared).forEach(saved::add);
+    publishUploads(saved);
+    return saved;
+  }
+
+  private void recordOne(String description, String path, PendingUpload upload) {
+    String fileName = upload.file.getOriginalFilename();
+    try {
+      upload.image = transactionTemplate.execute(status -> recordUpload(description, path, fileName,
+          upload.file.getSize(), upload.file.getContentType(), upload.objectKey, upload.result));
+    } catch (RuntimeException e) {
+      log.error("Failed to record file {}, {}", fileName, e.getMessage());
+      upload.error = "Failed to record file";
+    }
+  }
+
+  private void deleteUnrecorded(String path, String objectKey) {
+    try {
+      if (!contentObjects.exists(objectKey)) {
+        fileStore.delete(path, objectKey);
+      }
+    } catch (RuntimeException e) {
+      log.error("Failed to delete unrecorded object {}, {}", objectKey, e.getMessage());
+    }
+  }
+
+  private static class PendingUpload {
+    private final MultipartFile file;
+    private String objectKey;
+    private UploadResult result;
+    private String error;
+    private Image image;
+
+    private PendingUpload(MultipartFile file) {
+      this.file = file;
     }
   }
 
+  @Override
+  @Transactional(readOnly = true)
+  public Image getImageByName(String imageName) {
+    Image image = repository.findByImageFileName(imageName);
+    if (image == null) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, String.format("Image '%s' not found", imageName));
+    }
+    return image;
+  }
+
   @Override
   public byte[] downloadImageByName(String imageName) {
     try {
       Image image = repository.findByImageFileName(imageName);
-      byte[] download = fileStore.download(image.getImagePath(), image.getImageFileName());
+      byte[] download = fileStore.download(image.getImagePath(), image.getObjectKey());
       log.info("downloaded image, {} ", image.getImageFileName());
 
       return download;
@@ -123,13 +457,87 @@ public class ImageServiceImpl implements ImageService {
     }
   }
 
+  @Override
+  public ImageContent streamImageByName(String imageName, HttpRange range, String ifRange) {
+    try {
+      Image image = repository.findByImageFileName(imageName);
+      ImageContent content = openContent(image, range, ifRange);
+      log.info("streaming image, {} ", image.getImageFileName());
+
+      return content;
+    } catch (Exception e) {
+      log.error("Failed to download file, {}", e.getMessage());
+      throw e;
+    }
+  }
+
+  @Override
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public CompletableFuture<ImageContent> streamImageByNameAsync(String imageName, Integer width,
+      HttpRange range, String ifRange) {
+    Image image = repository.findByImageFileName(imageName);
+    if (image == null) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, String.format("Image '%s' not found", imageName));
+    }
+    CompletableFuture<ImageContent> content;
+    Integer variant = width == null ? null : derivativeService.resolveWidth(image, width);
+    if (variant != null) {
+      // variant sizes are not stored, so ranges are only served for originals
+      content = derivativeService.hasDerivative(image, variant)
+          ? asyncFileStore.stream(derivativeService.derivativePath(image, variant), image.getObjectKey(), null, null, null)
+          : derivativeService.generateOnDemand(image, variant);
+    } else {
+      long[] bounds = resolveRange(image, range);
+      content = bounds == null
+          ? asyncFileStore.stream(image.getImagePath(), image.getObjectKey(), null, null, null)
+          : asyncFileStore.stream(image.getImagePath(), image.getObjectKey(), bounds[0], bounds[1], ifRange);
+    }
+    return content.whenComplete((c, e) -> {
+      if (e != null) {
+        log.error("Failed to download file, {}", e.getMessage());
+      } else {
+        log.info("streaming image, {} ", image.getImageFileName());
+      }
+    });
+  }
+
+  @Override
+  public String getImageETag(Image image, Integer width) {
+    Integer variant = width == null ? null : derivativeService.resolveWidth(image, width);
+    return image.getETag() == null || variant == null ? image.getETag() : image.getETag() + "-w" + variant;
+  }
+
+  private ImageContent openContent(Image image, HttpRange range, String ifRange) {
+    long[] bounds = resolveRange(image, range);
+    if (bounds == null) {
+      return fileStore.stream(image.getImagePath(), image.getObjectKey(), null, null, null);
+    }
+    return fileStore.stream(image.getImagePath(), image.getObjectKey(), bounds[0], bounds[1], ifRange);
+  }
+
+  private long[] resolveRange(Image image, HttpRange range) {
+    if (range == null) {
+      return null;
+    }
+    long length = image.getImageSize();
+    long start = range.getRangeStart(length);
+    if (start >= length) {
+      throw new ResponseStatusException(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE,
+          String.format("Range start %d is beyond image size %d", start, length));
+    }
+    return new long[] {start, range.getRangeEnd(length)};
+  }
+
   @Override
   public Long deleteImageByName(String imageName) {
     try {
       Image image = repository.findByImageFileName(imageName);
-      fileStore.delete(image.getImagePath(), image.getImageFileName());
       Long aLong = repository.deleteByImageFileName(imageName);
-      log.info("deleted image, {}", image);
+      if (image.getObjectKey() != null && contentObjects.release(image.getObjectKey())) {
+        contentObjects.deleteStoredAfterCommit(image);
+      }
+      randomImageSelector.evict(imageName);
+      log.info("deleted image, {}", image.getImageFileName());
 
       return aLong;
     } catch (Exception e) {
@@ -138,12 +546,120 @@ public class ImageServiceImpl implements ImageService {
     }
   }
 
+  @Override
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public CompletableFuture<Long> deleteImageByNameAsync(String imageName) {
+    Image image = repository.findByImageFileName(imageName);
+    if (image == null) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, String.format("Image '%s' not found", imageName));
+    }
+    AtomicBoolean unreferenced = new AtomicBoolean();
+    Long count = transactionTemplate.execute(status -> {
+      Long deleted = repository.deleteByImageFileName(imageName);
+      unreferenced.set(image.getObjectKey() != null && contentObjects.release(image.getObjectKey()));
+      return deleted;
+    });
+    randomImageSelector.evict(imageName);
+    log.info("deleted image, {}", image.getImageFileName());
+    if (!unreferenced.get()) {
+      return CompletableFuture.completedFuture(count);
+    }
+    return s3Bulkhead.run(() -> contentObjects.deleteStored(image))
+        .thenApply(deleted -> count)
+        .whenComplete((c, e) -> {
+          if (e != null) {
+            log.error("Error deleting image content, {}", e.getMessage());
+          }
+        });
+  }
+
+  @Override
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public BulkDeleteResult deleteImages(BulkDeleteRequest request) {
+    boolean byName = request.getNames() != null && !request.getNames().isEmpty();
+    if (!byName && request.getExtension() == null && request.getUpdatedBefore() == null) {
+      throw new IllegalStateException("Bulk delete needs image names or a filter");
+    }
+
+    long deleted = 0;
+    List<String> notFound = new ArrayList<>();
+    List<String> failed = new ArrayList<>();
+    List<String> orphaned = new ArrayList<>();
+    if (byName) {
+      List<String> names = new ArrayList<>(new LinkedHashSet<>(request.getNames()));
+      for (int from = 0; from < names.size(); from += BULK_DELETE_CHUNK) {
+        List<String> chunk = names.subList(from, Math.min(from + BULK_DELETE_CHUNK, names.size()));
+        List<Image> images = repository.findByImageFileNameIn(chunk);
+        Set<String> found = images.stream().map(Image::getImageFileName).collect(Collectors.toSet());
+        chunk.stream().filter(name -> !found.contains(name)).forEach(notFound::add);
+        deleted += deleteChunk(images, failed, orphaned);
+      }
+    } else {
+      long after = 0;
+      List<Image> images;
+      do {
+        images = repository.findForDelete(after, request.getExtension(), request.getUpdatedBefore(),
+            PageRequest.of(0, BULK_DELETE_CHUNK));
+        if (!images.isEmpty()) {
+          after = images.get(images.size() - 1).getId();
+          deleted += deleteChunk(images, failed, orphaned);
+        }
+      } while (images.size() == BULK_DELETE_CHUNK);
+    }
+    log.info("Bulk deleted images, {} deleted, {} not found, {} failed", deleted, notFound.size(), failed.size());
+
+    return BulkDeleteResult.builder()
+        .deleted(deleted)
+        .notFound(notFound)
+        .failed(failed)
+        .orphanedObjects(orphaned)
+        .build();
+  }
+
+  /**
+   * Deletes the rows of one chunk in a single statement, then removes the content no other image
+   * references. Storage is cleaned up after the commit, so a failure there leaves unreferenced
+   * objects behind instead of rows pointing at missing objects.
+   */
+  private long deleteChunk(List<Image> images, List<String> failed, List<String> orphaned) {
+    if (images.isEmpty()) {
+      return 0;
+    }
+    List<Long> ids = images.stream().map(Image::getId).collect(Collectors.toList());
+    Set<String> objectKeys = images.stream()
+        .map(Image::getObjectKey)
+        .filter(Objects::nonNull)
+        .collect(Collectors.toSet());
+    AtomicInteger count = new AtomicInteger();
+    List<String> unreferenced;
+    try {
+      unreferenced = transactionTemplate.execute(status -> {
+        count.set(repository.deleteByIdIn(ids));
+        return contentObjects.releaseAll(objectKeys);
+      });
+    } catch (RuntimeException e) {
+      log.error("Error deleting {} images, {}", images.size(), e.getMessage());
+      images.forEach(image -> failed.add(image.getImageFileName()));
+      return 0;
+    }
+    images.forEach(image -> randomImageSelector.evict(image.getImageFileName()));
+
+    Map<String, Image> unreferencedImages = new HashMap<>();
+    for (Image image : images) {
+      if (unreferenced.contains(image.getObjectKey())) {
+        unreferencedImages.putIfAbsent(image.getObjectKey(), image);
+      }
+    }
+    orphaned.addAll(contentObjects.deleteStored(unreferencedImages.values()));
+    return count.get();
+  }
+
   @Override
   public List<Image> getAllImages() {
     try {
       List<Image> images = new ArrayList<>();
       repository.findAll().forEach(images::add);
-      log.info("Images founded, {}", images);
+      log.info("Images founded, {}", images.size());
 
       return images;
     } catch (Exception e) {
@@ -152,12 +668,68 @@ public class ImageServiceImpl implements ImageService {
     }
   }
 
+  @Override
+  @Transactional(readOnly = true)
+  public ImagePage getImagePage(Long after, int limit) {
+    int size = Math.max(1, Math.min(limit, maxPageSize));
+    List<Image> images = repository.findByIdGreaterThanOrderByIdAsc(after == null ? 0L : after, PageRequest.of(0, size));
+    Long nextCursor = images.size() < size ? null : images.get(images.size() - 1).getId();
+    log.info("Images page after {} founded, {}", after, images.size());
+
+    return new ImagePage(images, nextCursor);
+  }
+
+  @Override
+  public ImagePage searchImages(ImageSearchRequest request, Long after, String afterKey, int limit) {
+    int size = Math.max(1, Math.min(limit, maxPageSize));
+    String sortAttribute = request.sortAttribute();
+    List<Image> images;
+    try {
+      if (after != null && !"id".equals(sortAttribute) && afterKey == null) {
+        throw new IllegalArgumentException("Missing key of the search cursor");
+      }
+      images = repository.search(request, after, afterKey, size);
+    } catch (IllegalArgumentException | DateTimeParseException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid search cursor", e);
+    }
+    Image last = images.size() < size ? null : images.get(images.size() - 1);
+    String nextKey = last == null ? null
+        : "updateDate".equals(sortAttribute) ? last.getUpdateDate().toString()
+        : "imageSize".equals(sortAttribute) ? String.valueOf(last.getImageSize())
+        : null;
+    log.info("Images search after {} founded, {}", after, images.size());
+
+    return new ImagePage(images, last == null ? null : last.getId(), nextKey);
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public long exportImages(OutputStream outputStream) throws IOException {
+    ObjectWriter writer = mapper.writerFor(Image.class);
+    long count = 0;
+    try (Stream<Image> images = repository.streamAll()) {
+      Iterator<Image> iterator = images.iterator();
+      while (iterator.hasNext()) {
+        outputStream.write(writer.writeValueAsBytes(iterator.next()));
+        outputStream.write('\n');
+        count++;
+      }
+    }
+    log.info("Images exported, {}", count);
+
+    return count;
+  }
+
   @Override
   public byte[] getRandomImage() {
     try {
-      List<Image> list = getAllImages();
-      Image image = list.get(new Random().nextInt(list.size()));
-      byte[] download = fileStore.download(image.getImagePath(), image.getImageFileName());
+      RandomImageSelector.Prefetched prefetched = randomImageSelector.poll();
+      if (prefetched != null) {
+        log.info("Random image served from prefetch ring, {}", prefetched.getImage().getImageFileName());
+        return prefetched.getContent().getBytes();
+      }
+      Image image = randomImageSelector.pick();
+      byte[] download = fileStore.download(image.getImagePath(), image.getObjectKey());
       log.info("Random image founded, {}", image.getImageFileName());
 
       return download;
@@ -167,11 +739,77 @@ public class ImageServiceImpl implements ImageService {
     }
   }
 
+  @Override
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public CompletableFuture<ImageContent> streamRandomImageAsync() {
+    RandomImageSelector.Prefetched prefetched = randomImageSelector.poll();
+    if (prefetched != null) {
+      log.info("Random image served from prefetch ring, {}", prefetched.getImage().getImageFileName());
+      CachedImage cached = prefetched.getContent();
+      return CompletableFuture.completedFuture(ImageContent.builder()
+          .inputStream(new ByteArrayInputStream(cached.getBytes()))
+          .contentType(cached.getContentType())
+          .contentLength(cached.getBytes().length)
+          .instanceLength(cached.getBytes().length)
+          .eTag(cached.getETag())
+          .lastModified(cached.getLastModified())
+          .build());
+    }
+    Image image = randomImageSelector.pick();
+    CompletableFuture<ImageContent> content;
+    if (fileStore instanceof FilesystemFileStoreService) {
+      // a local file is opened on the request thread, so the controller can still hand it to sendfile
+      content = CompletableFuture.completedFuture(
+          fileStore.stream(image.getImagePath(), image.getObjectKey(), null, null, null));
+    } else {
+      content = asyncFileStore.stream(image.getImagePath(), image.getObjectKey(), null, null, null);
+    }
+    return content.whenComplete((c, e) -> {
+      if (e != null) {
+        log.error("Error getting random image, {}", e.getMessage());
+      } else {
+        log.info("Random image founded, {}", image.getImageFileName());
+      }
+    });
+  }
+
+  @Override
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public CompletableFuture<SubscribeResult> subscribeEmailAsync(String email) {
+    return snsBulkhead.supply(() -> subscribeEmail(email));
+  }
+
+  @Override
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public CompletableFuture<UnsubscribeResult> unsubscribeEmailAsync(String email) {
+    return snsBulkhead.supply(() -> unsubscribeEmail(email));
+  }
+
+  @Override
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public CompletableFuture<String> triggerLambdaAsync() {
+    return lambdaBulkhead.supply(this::triggerLambda);
+  }
+
+  @Override
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public NotifyTicket triggerLambdaEvent(Map<String, Object> detail) {
+    return lambdaNotifier.submit(detail);
+  }
+
+  @Override
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public Optional<NotifyTicket> getNotifyTicket(String id) {
+    return lambdaNotifier.find(id);
+  }
+
   @Override
   public SubscribeResult subscribeEmail(String email) {
     try {
-      final SubscribeRequest subscribeRequest = new SubscribeRequest(topicArn, "email", email);
+      final SubscribeRequest subscribeRequest = new SubscribeRequest(topicArn, "email", email)
+          .withReturnSubscriptionArn(true);
       SubscribeResult subscribe = amazonSNSClient.subscribe(subscribeRequest);
+      subscriptionIndex.put(email, subscribe.getSubscriptionArn());
       log.info("Subscribed with arn, {}", subscribe.getSubscriptionArn());
 
       return subscribe;
@@ -184,19 +822,21 @@ public class ImageServiceImpl implements ImageService {
   @Override
   public UnsubscribeResult unsubscribeEmail(String email) {
     try {
-      ListSubscriptionsResult listResult = amazonSNSClient.listSubscriptions();
-      List<Subscription> subscriptions = listResult.getSubscriptions();
-      String arn = subscriptions.stream()
-              .filter(subs -> subs.getProtocol().equalsIgnoreCase("email") && subs.getEndpoint().equals(email))
-              .findFirst()
-              .map(Subscription::getSubscriptionArn)
-              .orElse("");
+      Optional<String> subscriptionArn = subscriptionIndex.lookup(email);
+      if (!subscriptionArn.isPresent()) {
+        log.warn("No subscription found for {}", email);
+        throw new ResponseStatusException(HttpStatus.NOT_FOUND, String.format("No subscription for '%s'", email));
+      }
+      String arn = subscriptionArn.get();
 
       final UnsubscribeRequest unSubscribeRequest = new UnsubscribeRequest(arn);
       UnsubscribeResult unsubscribe = amazonSNSClient.unsubscribe(unSubscribeRequest);
+      subscriptionIndex.remove(email);
       log.info("Unsubscribed arn, {}", arn);
 
       return unsubscribe;
+    } catch (ResponseStatusException e) {
+      throw e;
     } catch (Exception e) {
       log.error("Error unsubscribing, {}", e.getMessage());
       return new UnsubscribeResult();
@@ -0,0 +1,239 @@
+package com.odhiambopaul.springamazon.service;
+
+import com.amazonaws.services.lambda.AWSLambdaClient;
+import com.amazonaws.services.lambda.model.InvocationType;
+import com.amazonaws.services.lambda.model.InvokeRequest;
+import com.amazonaws.services.lambda.model.InvokeResult;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.odhiambopaul.springamazon.domain.NotifyTicket;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Coalesces notify requests into asynchronous ({@code Event}) Lambda invocations. The first request
+ * of a window schedules the flush, every request arriving until then is carried in the same payload.
+ * Each request gets a ticket whose status is kept for polling until it expires. Details are capped
+ * in size and a batch is sent early rather than outgrow the payload limit of Event invocations.
+ */
+@Component
+@Slf4j
+public class LambdaNotifier {
+
+    // ticket id and JSON punctuation each request adds to the payload besides its detail
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final AWSLambdaClient awsLambdaClient;
+    private final Bulkhead lambdaBulkhead;
+    private final ObjectMapper mapper;
+    private final String lambdaArn;
+    private final long windowMillis;
+    private final int maxBatch;
+    private final int maxDetailBytes;
+    private final int maxPayloadBytes;
+    private final Cache<String, NotifyTicket> tickets;
+    private final ScheduledExecutorService flusher;
+    private final List<Pending> pending = new ArrayList<>();
+    private int pendingBytes;
+
+    public LambdaNotifier(AWSLambdaClient awsLambdaClient,
+                          Bulkhead lambdaBulkhead,
+                          ObjectMapper mapper,
+                          @Value("${aws.lambda.arn}") String lambdaArn,
+                          @Value("${aws.lambda.coalesce.window-ms}") long windowMillis,
+                          @Value("${aws.lambda.coalesce.max-batch}") int maxBatch,
+                          @Value("${aws.lambda.coalesce.max-detail-bytes}") int maxDetailBytes,
+                          @Value("${aws.lambda.coalesce.max-payload-bytes}") int maxPayloadBytes,
+                          @Value("${aws.lambda.coalesce.ticket-ttl-seconds}") long ticketTtlSeconds) {
+        this.awsLambdaClient = awsLambdaClient;
+        this.lambdaBulkhead = lambdaBulkhead;
+        this.mapper = mapper;
+        this.lambdaArn = lambdaArn;
+        this.windowMillis = windowMillis;
+        this.maxBatch = maxBatch;
+        this.maxDetailBytes = maxDetailBytes;
+        this.maxPayloadBytes = maxPayloadBytes;
+        this.tickets = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(ticketTtlSeconds))
+                .build();
+        this.flusher = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("lambda-notifier-"));
+    }
+
+    public NotifyTicket submit(Map<String, Object> detail) {
+        int detailBytes = serializedSize(detail);
+        if (detailBytes > maxDetailBytes) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    String.format("Event detail exceeds %d bytes", maxDetailBytes));
+        }
+        NotifyTicket ticket = NotifyTicket.builder()
+                .id(UUID.randomUUID().toString())
+                .status(NotifyTicket.Status.PENDING)
+                .requestedAt(Instant.now())
+                .build();
+        tickets.put(ticket.getId(), ticket);
+        int entryBytes = ENTRY_OVERHEAD + detailBytes;
+        List<Pending> overflow = Collections.emptyList();
+        boolean full;
+        synchronized (pending) {
+            if (!pending.isEmpty() && pendingBytes + entryBytes > maxPayloadBytes) {
+                overflow = drainLocked();
+            }
+            pending.add(new Pending(ticket, detail));
+            pendingBytes += entryBytes;
+            if (pending.size() == 1) {
+                flusher.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+            }
+            full = pending.size() >= maxBatch;
+        }
+        if (!overflow.isEmpty()) {
+            List<Pending> batch = overflow;
+            flusher.execute(() -> send(batch));
+        }
+        if (full) {
+            flusher.execute(this::flush);
+        }
+        return ticket;
+    }
+
+    public Optional<NotifyTicket> find(String id) {
+        return Optional.ofNullable(tickets.getIfPresent(id));
+    }
+
+    private int serializedSize(Map<String, Object> detail) {
+        if (detail == null || detail.isEmpty()) {
+            return 0;
+        }
+        try {
+            return mapper.writeValueAsBytes(detail).length;
+        } catch (JsonProcessingException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Event detail cannot be serialized");
+        }
+    }
+
+    private void flush() {
+        List<Pending> batch;
+        synchronized (pending) {
+            batch = drainLocked();
+        }
+        send(batch);
+    }
+
+    private List<Pending> drainLocked() {
+        if (pending.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Pending> batch = new ArrayList<>(pending);
+        pending.clear();
+        pendingBytes = 0;
+        return batch;
+    }
+
+    private void send(List<Pending> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        InvokeRequest request;
+        try {
+            request = request(batch);
+        } catch (JsonProcessingException e) {
+            complete(batch, null, e);
+            return;
+        }
+        lambdaBulkhead.supply(() -> awsLambdaClient.invoke(request))
+                .whenComplete((result, e) -> complete(batch, result, e));
+    }
+
+    private InvokeRequest request(List<Pending> batch) throws JsonProcessingException {
+        return new InvokeRequest()
+                .withFunctionName(lambdaArn)
+                .withInvocationType(InvocationType.Event)
+                .withPayload(payload(batch));
+    }
+
+    private String payload(List<Pending> batch) throws JsonProcessingException {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("detail-type", "web application");
+        payload.put("coalesced", batch.size());
+        payload.put("tickets", batch.stream().map(p -> p.ticket.getId()).collect(Collectors.toList()));
+        List<Map<String, Object>> details = batch.stream()
+                .map(p -> p.detail)
+                .filter(detail -> detail != null && !detail.isEmpty())
+                .collect(Collectors.toList());
+        if (!details.isEmpty()) {
+            payload.put("details", details);
+        }
+        return mapper.writeValueAsString(payload);
+    }
+
+    private void complete(List<Pending> batch, InvokeResult result, Throwable e) {
+        Instant now = Instant.now();
+        String invocationId = result == null || result.getSdkResponseMetadata() == null
+                ? null : result.getSdkResponseMetadata().getRequestId();
+        if (e == null) {
+            log.info("Lambda {} invoked for {} coalesced requests, {}", lambdaArn, batch.size(), invocationId);
+        } else {
+            log.error("Failed to invoke lambda {} for {} coalesced requests, {}", lambdaArn, batch.size(), e.getMessage());
+        }
+        for (Pending p : batch) {
+            tickets.put(p.ticket.getId(), p.ticket.toBuilder()
+                    .status(e == null ? NotifyTicket.Status.INVOKED : NotifyTicket.Status.FAILED)
+                    .invokedAt(now)
+                    .invocationId(invocationId)
+                    .coalesced(batch.size())
+                    .error(e == null ? null : e.getMessage())
+                    .build());
+        }
+    }
+
+    /**
+     * Sends the batch still waiting for its window on the closing thread, so accepted tickets are not
+     * dropped on shutdown.
+     */
+    @PreDestroy
+    void shutdown() {
+        flusher.shutdownNow();
+        List<Pending> batch;
+        synchronized (pending) {
+            batch = drainLocked();
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            complete(batch, awsLambdaClient.invoke(request(batch)), null);
+        } catch (JsonProcessingException | RuntimeException e) {
+            complete(batch, null, e);
+        }
+    }
+
+    private static class Pending {
+        private final NotifyTicket ticket;
+        private final Map<String, Object> detail;
+
+        Pending(NotifyTicket ticket, Map<String, Object> detail) {
+            this.ticket = ticket;
+            this.detail = detail;
+        }
+    }
+}
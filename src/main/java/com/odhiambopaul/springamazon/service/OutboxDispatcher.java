@@ -0,0 +1,172 @@
+package com.odhiambopaul.springamazon.service;
+
+import com.amazonaws.services.sqs.AmazonSQSClient;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.odhiambopaul.springamazon.domain.OutboxDeadLetter;
+import com.odhiambopaul.springamazon.domain.OutboxMessage;
+import com.odhiambopaul.springamazon.repositories.OutboxDeadLetterRepository;
+import com.odhiambopaul.springamazon.repositories.OutboxMessageRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Drains the outbox written by uploads to SQS with SendMessageBatch. Messages are sent strictly in id
+ * order: a batch is committed only up to its first failed entry, and that entry holds back every later
+ * message until it is retried, with exponential backoff, and accepted. An entry SQS rejects
+ * {@code max-attempts} times is moved to the dead-letter table so the queue can advance. On FIFO
+ * queues the outbox id is used as deduplication id, so a redelivered batch is not duplicated.
+ *
+ * <p>A batch is claimed with a lease in a short transaction and sent outside of it, so no row lock or
+ * connection is held during the SQS call. Other instances see the leased head and wait.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class OutboxDispatcher {
+
+    private static final int BATCH_SIZE = 10;
+    private static final String MESSAGE_GROUP_ID = "image-uploads";
+
+    private final OutboxMessageRepository repository;
+    private final OutboxDeadLetterRepository deadLetters;
+    private final AmazonSQSClient amazonSQSClient;
+    private final TransactionTemplate transactionTemplate;
+    private final Bulkhead sqsBulkhead;
+
+    @Value("${aws.sqs.url}")
+    private String sqsUrl;
+
+    @Value("${outbox.max-backoff-seconds}")
+    private long maxBackoffSeconds;
+
+    @Value("${outbox.max-attempts}")
+    private int maxAttempts;
+
+    @Value("${outbox.lease-seconds}")
+    private long leaseSeconds;
+
+    @Scheduled(fixedDelayString = "${outbox.dispatch-interval-ms}")
+    public void dispatch() {
+        int sent;
+        do {
+            sent = dispatchBatch();
+        } while (sent == BATCH_SIZE);
+    }
+
+    private int dispatchBatch() {
+        List<OutboxMessage> batch = transactionTemplate.execute(status -> claimBatch());
+        if (batch == null || batch.isEmpty()) {
+            return 0;
+        }
+        List<SendMessageBatchRequestEntry> entries = batch.stream()
+                .map(this::toEntry)
+                .collect(Collectors.toList());
+        Map<String, BatchResultErrorEntry> rejected = new HashMap<>();
+        Set<String> sentIds = new HashSet<>();
+        String error = null;
+        try {
+            SendMessageBatchResult result = sqsBulkhead
+                    .supply(() -> amazonSQSClient.sendMessageBatch(new SendMessageBatchRequest(sqsUrl, entries)))
+                    .join();
+            result.getSuccessful().forEach(entry -> sentIds.add(entry.getId()));
+            result.getFailed().forEach(f -> {
+                log.error("Failed to send outbox message {}, {}", f.getId(), f.getMessage());
+                rejected.put(f.getId(), f);
+            });
+        } catch (RuntimeException e) {
+            log.error("Failed to send outbox batch, {}", e.getMessage());
+            error = e.getMessage();
+        }
+
+        List<OutboxMessage> sent = new ArrayList<>(sentIds.size());
+        OutboxMessage failed = null;
+        for (OutboxMessage message : batch) {
+            if (!sentIds.contains(String.valueOf(message.getId()))) {
+                failed = message;
+                break;
+            }
+            sent.add(message);
+        }
+        BatchResultErrorEntry rejection = failed == null ? null : rejected.get(String.valueOf(failed.getId()));
+        OutboxMessage head = failed;
+        String reason = rejection == null ? error : rejection.getMessage();
+        transactionTemplate.executeWithoutResult(status -> complete(batch, sent, head, rejection != null, reason));
+        log.info("Outbox dispatched {} of {} messages", sent.size(), batch.size());
+
+        return sent.size();
+    }
+
+    /**
+     * Locks the oldest messages just long enough to lease them. Nothing is claimed while the head is
+     * leased by another instance or not due yet, since no message may overtake it.
+     */
+    private List<OutboxMessage> claimBatch() {
+        List<OutboxMessage> batch = repository.findTop10ByOrderByIdAsc();
+        Instant now = Instant.now();
+        if (batch.isEmpty() || batch.get(0).getNextAttemptAt().isAfter(now)
+                || batch.get(0).getLeaseUntil() != null && batch.get(0).getLeaseUntil().isAfter(now)) {
+            return Collections.emptyList();
+        }
+        Instant leaseUntil = now.plusSeconds(leaseSeconds);
+        batch.forEach(message -> message.setLeaseUntil(leaseUntil));
+        return batch;
+    }
+
+    private void complete(List<OutboxMessage> batch, List<OutboxMessage> sent, OutboxMessage failed,
+                          boolean rejected, String error) {
+        repository.deleteAll(sent);
+        List<OutboxMessage> remaining = new ArrayList<>(batch.subList(sent.size(), batch.size()));
+        remaining.forEach(message -> message.setLeaseUntil(null));
+        if (failed != null) {
+            failed.setAttempts(failed.getAttempts() + 1);
+            // only entries SQS itself rejected count as dead, an unreachable queue is waited out
+            if (rejected && failed.getAttempts() >= maxAttempts) {
+                deadLetter(failed, error);
+                remaining.remove(failed);
+            } else {
+                long backoff = Math.min(maxBackoffSeconds, 1L << Math.min(failed.getAttempts(), 20));
+                failed.setNextAttemptAt(Instant.now().plusSeconds(backoff));
+            }
+        }
+        repository.saveAll(remaining);
+    }
+
+    private void deadLetter(OutboxMessage message, String error) {
+        log.error("Outbox message {} rejected {} times, moving it to the dead letters, {}",
+                message.getId(), message.getAttempts(), error);
+        deadLetters.save(OutboxDeadLetter.builder()
+                .id(message.getId())
+                .payload(message.getPayload())
+                .attempts(message.getAttempts())
+                .error(error)
+                .failedAt(Instant.now())
+                .build());
+        repository.delete(message);
+    }
+
+    private SendMessageBatchRequestEntry toEntry(OutboxMessage message) {
+        String id = String.valueOf(message.getId());
+        SendMessageBatchRequestEntry entry = new SendMessageBatchRequestEntry(id, message.getPayload());
+        if (sqsUrl.endsWith(".fifo")) {
+            entry.withMessageGroupId(MESSAGE_GROUP_ID).withMessageDeduplicationId(id);
+        }
+        return entry;
+    }
+}
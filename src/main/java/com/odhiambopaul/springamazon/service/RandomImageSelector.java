@@ -0,0 +1,122 @@
+package com.odhiambopaul.springamazon.service;
+
+import com.odhiambopaul.springamazon.domain.Image;
+import com.odhiambopaul.springamazon.domain.ImageContent;
+import com.odhiambopaul.springamazon.repositories.ImageRepository;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Picks random images by sampling the primary key range instead of loading the table. When
+ * {@code image.random.prefetch-size} is positive a ring of already downloaded random images is kept
+ * so {@code /random} can be answered without waiting for S3.
+ */
+@Component
+@Slf4j
+public class RandomImageSelector {
+
+    private final ImageRepository repository;
+    private final FileStoreService fileStore;
+    private final BlockingQueue<Prefetched> ring;
+    private final ExecutorService refiller;
+    private final AtomicBoolean refilling = new AtomicBoolean();
+
+    public RandomImageSelector(ImageRepository repository,
+                               FileStoreService fileStore,
+                               @Value("${image.random.prefetch-size}") int prefetchSize) {
+        this.repository = repository;
+        this.fileStore = fileStore;
+        this.ring = prefetchSize > 0 ? new ArrayBlockingQueue<>(prefetchSize) : null;
+        this.refiller = prefetchSize > 0
+                ? Executors.newSingleThreadExecutor(new CustomizableThreadFactory("random-prefetch-"))
+                : null;
+    }
+
+    public Image pick() {
+        ImageRepository.IdRange range = repository.findIdRange();
+        if (range == null || range.getMinId() == null) {
+            throw new IllegalStateException("There are no images to choose from");
+        }
+        long id = ThreadLocalRandom.current().nextLong(range.getMinId(), range.getMaxId() + 1);
+        Image image = repository.findFirstByIdGreaterThanEqualOrderByIdAsc(id);
+        if (image == null) {
+            // the tail of the range was deleted after it was read
+            image = repository.findFirstByIdGreaterThanEqualOrderByIdAsc(range.getMinId());
+        }
+        if (image == null) {
+            throw new IllegalStateException("There are no images to choose from");
+        }
+        return image;
+    }
+
+    /**
+     * Returns a prefetched random image, or {@code null} when the ring is disabled or drained.
+     */
+    public Prefetched poll() {
+        if (ring == null) {
+            return null;
+        }
+        Prefetched prefetched = ring.poll();
+        scheduleRefill();
+        return prefetched;
+    }
+
+    public void evict(String imageFileName) {
+        if (ring != null) {
+            ring.removeIf(prefetched -> prefetched.getImage().getImageFileName().equals(imageFileName));
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void scheduleRefill() {
+        if (ring != null && refilling.compareAndSet(false, true)) {
+            refiller.execute(this::refill);
+        }
+    }
+
+    private void refill() {
+        try {
+            while (ring.remainingCapacity() > 0) {
+                Image image = pick();
+                try (ImageContent content = fileStore.stream(image.getImagePath(), image.getObjectKey(), null, null, null)) {
+                    CachedImage bytes = new CachedImage(content.toByteArray(),
+                            content.getContentType(), content.getETag(), content.getLastModified());
+                    ring.offer(new Prefetched(image, bytes));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to prefetch random images, {}", e.getMessage());
+        } finally {
+            refilling.set(false);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (refiller != null) {
+            refiller.shutdownNow();
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Prefetched {
+        private final Image image;
+        private final CachedImage content;
+    }
+}
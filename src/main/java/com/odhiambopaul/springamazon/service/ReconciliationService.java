@@ -0,0 +1,381 @@
+package com.odhiambopaul.springamazon.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.odhiambopaul.springamazon.domain.ContentObject;
+import com.odhiambopaul.springamazon.domain.Image;
+import com.odhiambopaul.springamazon.domain.ReconciliationResult;
+import com.odhiambopaul.springamazon.repositories.ContentObjectRepository;
+import com.odhiambopaul.springamazon.repositories.ImageRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Reconciles the content catalogue with the objects under {@code <bucket>/images}. Content keys are
+ * sha256 hex, so the prefix is split into hex partitions listed in parallel with ListObjectsV2. Each
+ * partition is merge-joined page by page against the content rows in key order, so memory stays
+ * bounded by the page and batch sizes whatever the bucket holds.
+ *
+ * <p>Objects without a row are reported, imported as content and image rows in JDBC batches, or
+ * purged, depending on the mode. Objects younger than the grace period are left alone, and rows
+ * without an object are only reported. Direct upload keys are never imported, their HEAD check on
+ * completion has not vouched for them. A purge is preceded by a report pass and refused when the
+ * catalogue is empty or too large a share of the bucket has no rows, which points at a wrong
+ * database rather than at orphans.
+ */
+@Service
+@Profile("!filesystem")
+@Slf4j
+public class ReconciliationService {
+
+    private static final String IMAGES_PREFIX = "images/";
+    private static final String HEX = "0123456789abcdef";
+    private static final String IMPORTED_DESCRIPTION = "Imported from storage";
+    // sha256 content keys and the uuid keys of direct uploads
+    private static final Pattern CONTENT_KEY = Pattern.compile("[0-9a-f]{32}|[0-9a-f]{64}");
+    private static final int SHA256_KEY_LENGTH = 64;
+
+    private final AmazonS3 amazonS3;
+    private final ContentObjectRepository contentObjects;
+    private final ImageRepository images;
+    private final FileStoreService fileStore;
+    private final TransactionTemplate transactionTemplate;
+    private final String bucketName;
+    private final int partitionDepth;
+    private final int batchSize;
+    private final long graceSeconds;
+    private final double maxPurgeShare;
+    private final boolean onStartup;
+    private final ReconciliationResult.Mode startupMode;
+    private final ExecutorService executor;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public ReconciliationService(AmazonS3 amazonS3,
+                                 ContentObjectRepository contentObjects,
+                                 ImageRepository images,
+                                 FileStoreService fileStore,
+                                 TransactionTemplate transactionTemplate,
+                                 @Value("${aws.s3.bucketName}") String bucketName,
+                                 @Value("${image.reconcile.partition-depth}") int partitionDepth,
+                                 @Value("${image.reconcile.threads}") int threads,
+                                 @Value("${image.reconcile.batch-size}") int batchSize,
+                                 @Value("${image.reconcile.grace-seconds}") long graceSeconds,
+                                 @Value("${image.reconcile.max-purge-share}") double maxPurgeShare,
+                                 @Value("${image.reconcile.on-startup}") boolean onStartup,
+                                 @Value("${image.reconcile.startup-mode}") ReconciliationResult.Mode startupMode) {
+        this.amazonS3 = amazonS3;
+        this.contentObjects = contentObjects;
+        this.images = images;
+        this.fileStore = fileStore;
+        this.transactionTemplate = transactionTemplate;
+        this.bucketName = bucketName;
+        this.partitionDepth = partitionDepth;
+        this.batchSize = batchSize;
+        this.graceSeconds = graceSeconds;
+        this.maxPurgeShare = maxPurgeShare;
+        this.onStartup = onStartup;
+        this.startupMode = startupMode;
+        this.executor = Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("reconcile-"));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void reconcileOnStartup() {
+        if (onStartup) {
+            try {
+                reconcile(startupMode);
+            } catch (ResponseStatusException e) {
+                log.warn("Reconciliation on startup skipped, {}", e.getReason());
+            }
+        }
+    }
+
+    public CompletableFuture<ReconciliationResult> reconcile(ReconciliationResult.Mode mode) {
+        if (!running.compareAndSet(false, true)) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "A reconciliation is already running");
+        }
+        CompletableFuture<ReconciliationResult> run;
+        try {
+            run = mode == ReconciliationResult.Mode.PURGE ? purge() : scan(mode);
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+        return run.whenComplete((result, e) -> running.set(false));
+    }
+
+    private CompletableFuture<ReconciliationResult> purge() {
+        if (contentObjects.count() == 0) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Refusing to purge against an empty catalogue");
+        }
+        return scan(ReconciliationResult.Mode.REPORT)
+                .thenCompose(report -> {
+                    if (!report.getFailedPartitions().isEmpty()) {
+                        throw new ResponseStatusException(HttpStatus.CONFLICT,
+                                "Refusing to purge, the report pass failed for " + report.getFailedPartitions());
+                    }
+                    if (report.getMissingRows() > report.getListedObjects() * maxPurgeShare) {
+                        log.warn("Purge refused, {} of {} objects have no row", report.getMissingRows(),
+                                report.getListedObjects());
+                        throw new ResponseStatusException(HttpStatus.CONFLICT, String.format(
+                                "Refusing to purge %d of %d objects", report.getMissingRows(), report.getListedObjects()));
+                    }
+                    return scan(ReconciliationResult.Mode.PURGE);
+                });
+    }
+
+    private CompletableFuture<ReconciliationResult> scan(ReconciliationResult.Mode mode) {
+        long start = System.currentTimeMillis();
+        Totals totals = new Totals();
+        List<String> partitions = partitions();
+        List<String> failed = Collections.synchronizedList(new ArrayList<>());
+        log.info("Reconciliation started in {} mode over {} partitions", mode, partitions.size());
+
+        CompletableFuture<?>[] runs = partitions.stream()
+                .map(partition -> CompletableFuture.runAsync(() -> reconcilePartition(partition, mode, totals), executor)
+                        .exceptionally(e -> {
+                            log.error("Reconciliation of partition {} failed, {}", partition, e.getMessage());
+                            failed.add(partition);
+                            return null;
+                        }))
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(runs)
+                .thenApply(ignored -> {
+                    ReconciliationResult result = ReconciliationResult.builder()
+                            .mode(mode)
+                            .partitions(partitions.size())
+                            .listedObjects(totals.listed.sum())
+                            .missingRows(totals.missingRows.sum())
+                            .importedRows(totals.imported.sum())
+                            .missingObjects(totals.missingObjects.sum())
+                            .purgedObjects(totals.purged.sum())
+                            .failedPartitions(new ArrayList<>(failed))
+                            .durationMillis(System.currentTimeMillis() - start)
+                            .build();
+                    log.info("Reconciliation finished, {} objects listed, {} without rows, "
+                                    + "{} rows without objects in {} ms", result.getListedObjects(),
+                            result.getMissingRows(), result.getMissingObjects(), result.getDurationMillis());
+                    return result;
+                });
+    }
+
+    private List<String> partitions() {
+        List<String> partitions = Collections.singletonList("");
+        for (int level = 0; level < partitionDepth; level++) {
+            List<String> next = new ArrayList<>(partitions.size() * HEX.length());
+            for (String partition : partitions) {
+                for (char digit : HEX.toCharArray()) {
+                    next.add(partition + digit);
+                }
+            }
+            partitions = next;
+        }
+        return partitions;
+    }
+
+    private void reconcilePartition(String partition, ReconciliationResult.Mode mode, Totals totals) {
+        ObjectCursor objects = new ObjectCursor(partition);
+        RowCursor rows = new RowCursor(partition);
+        List<S3ObjectSummary> missing = new ArrayList<>(batchSize);
+        // recent objects may belong to uploads whose rows are not committed yet
+        Instant settledBefore = Instant.now().minusSeconds(graceSeconds);
+
+        String object = objects.next();
+        String row = rows.next();
+        while (object != null || row != null) {
+            int order = object == null ? 1 : row == null ? -1 : object.compareTo(row);
+            if (order < 0) {
+                if (objects.current.getLastModified().toInstant().isBefore(settledBefore)) {
+                    missing.add(objects.current);
+                }
+                if (missing.size() == batchSize) {
+                    resolve(missing, mode, totals);
+                    missing.clear();
+                }
+                object = objects.next();
+            } else if (order > 0) {
+                totals.missingObjects.increment();
+                row = rows.next();
+            } else {
+                object = objects.next();
+                row = rows.next();
+            }
+        }
+        if (!missing.isEmpty()) {
+            resolve(missing, mode, totals);
+        }
+        totals.listed.add(objects.listed);
+    }
+
+    private void resolve(List<S3ObjectSummary> missing, ReconciliationResult.Mode mode, Totals totals) {
+        totals.missingRows.add(missing.size());
+        List<String> keys = missing.stream()
+                .map(summary -> summary.getKey().substring(IMAGES_PREFIX.length()))
+                .collect(Collectors.toList());
+        if (mode == ReconciliationResult.Mode.PURGE) {
+            List<String> failed = fileStore.deleteAll(String.format("%s/%s", bucketName, "images"), keys);
+            totals.purged.add(keys.size() - failed.size());
+        } else if (mode == ReconciliationResult.Mode.IMPORT) {
+            List<S3ObjectSummary> content = missing.stream()
+                    .filter(summary -> summary.getKey().length() == IMAGES_PREFIX.length() + SHA256_KEY_LENGTH)
+                    .collect(Collectors.toList());
+            if (!content.isEmpty()) {
+                Integer imported = transactionTemplate.execute(status -> importRows(content));
+                totals.imported.add(imported == null ? 0 : imported);
+            }
+        }
+    }
+
+    /**
+     * Inserts a content row for every object and an image row for those no image refers to yet. The
+     * original file name is not kept in S3, imported images are named after their content key.
+     */
+    private int importRows(List<S3ObjectSummary> missing) {
+        String path = String.format("%s/%s", bucketName, "images");
+        Set<String> referenced = new HashSet<>(images.findObjectKeysIn(missing.stream()
+                .map(summary -> summary.getKey().substring(IMAGES_PREFIX.length()))
+                .collect(Collectors.toList())));
+        List<ContentObject> contents = new ArrayList<>(missing.size());
+        List<Image> imported = new ArrayList<>(missing.size());
+        for (S3ObjectSummary summary : missing) {
+            String key = summary.getKey().substring(IMAGES_PREFIX.length());
+            String url = amazonS3.getUrl(bucketName, summary.getKey()).toString();
+            boolean orphan = !referenced.contains(key);
+            contents.add(ContentObject.builder()
+                    .objectKey(key)
+                    .imagePath(path)
+                    .url(url)
+                    .eTag(summary.getETag())
+                    .objectSize(summary.getSize())
+                    .refCount(orphan ? 1 : 0)
+                    .build());
+            if (orphan) {
+                imported.add(Image.builder()
+                        .description(IMPORTED_DESCRIPTION)
+                        .imagePath(path)
+                        .imageFileName(key)
+                        .url(url)
+                        .objectKey(key)
+                        .imageSize(summary.getSize())
+                        .updateDate(summary.getLastModified().toInstant().atOffset(ZoneOffset.UTC).toLocalDate())
+                        .eTag(summary.getETag())
+                        .lastModified(summary.getLastModified().toInstant())
+                        .build());
+            }
+        }
+        contentObjects.persistAll(contents);
+        images.saveAll(imported);
+        if (!referenced.isEmpty()) {
+            contentObjects.recountRefs(referenced);
+        }
+        return imported.size();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Walks one partition of the bucket in key order, a ListObjectsV2 page at a time.
+     */
+    private class ObjectCursor {
+        private final ListObjectsV2Request request;
+        private Iterator<S3ObjectSummary> page = Collections.emptyIterator();
+        private boolean truncated = true;
+        private S3ObjectSummary current;
+        private long listed;
+
+        ObjectCursor(String partition) {
+            this.request = new ListObjectsV2Request()
+                    .withBucketName(bucketName)
+                    .withPrefix(IMAGES_PREFIX + partition);
+        }
+
+        /**
+         * Returns the next content key, skipping objects that are not content, such as the variants
+         * stored under their own prefixes, which would otherwise be imported or purged.
+         */
+        String next() {
+            while (true) {
+                while (!page.hasNext() && truncated) {
+                    ListObjectsV2Result result = amazonS3.listObjectsV2(request);
+                    page = result.getObjectSummaries().iterator();
+                    truncated = result.isTruncated();
+                    request.setContinuationToken(result.getNextContinuationToken());
+                }
+                current = page.hasNext() ? page.next() : null;
+                if (current == null) {
+                    return null;
+                }
+                String key = current.getKey().substring(IMAGES_PREFIX.length());
+                if (CONTENT_KEY.matcher(key).matches()) {
+                    listed++;
+                    return key;
+                }
+            }
+        }
+    }
+
+    /**
+     * Walks the content rows of one partition in key order with keyset pagination.
+     */
+    private class RowCursor {
+        private final String partition;
+        private Iterator<String> page = Collections.emptyIterator();
+        private String last = "";
+        private boolean exhausted;
+
+        RowCursor(String partition) {
+            this.partition = partition;
+        }
+
+        String next() {
+            if (!page.hasNext() && !exhausted) {
+                List<String> keys = contentObjects.findKeysAfter(last, partition, PageRequest.of(0, batchSize));
+                exhausted = keys.size() < batchSize;
+                page = keys.iterator();
+            }
+            if (!page.hasNext()) {
+                return null;
+            }
+            last = page.next();
+            return last;
+        }
+    }
+
+    private static class Totals {
+        private final LongAdder listed = new LongAdder();
+        private final LongAdder missingRows = new LongAdder();
+        private final LongAdder imported = new LongAdder();
+        private final LongAdder missingObjects = new LongAdder();
+        private final LongAdder purged = new LongAdder();
+    }
+}
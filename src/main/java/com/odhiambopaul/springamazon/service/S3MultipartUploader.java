@@ -0,0 +1,150 @@
+package com.odhiambopaul.springamazon.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.odhiambopaul.springamazon.domain.UploadResult;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Uploads a stream as an S3 multipart upload. Parts are read sequentially from the stream and sent
+ * in parallel, at most {@code concurrency} parts of one upload are buffered in memory at a time.
+ */
+@Component
+@Slf4j
+public class S3MultipartUploader {
+
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+
+    private final AmazonS3 amazonS3;
+    private final int partSize;
+    private final int concurrency;
+    private final ExecutorService executor;
+
+    public S3MultipartUploader(AmazonS3 amazonS3,
+                               @Value("${aws.s3.multipart.part-size}") long partSize,
+                               @Value("${aws.s3.multipart.concurrency}") int concurrency,
+                               @Value("${aws.s3.multipart.threads}") int threads) {
+        this.amazonS3 = amazonS3;
+        this.partSize = (int) Math.max(partSize, MIN_PART_SIZE);
+        this.concurrency = concurrency;
+        this.executor = Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("s3-multipart-"));
+    }
+
+    public UploadResult upload(String path, String key, ObjectMetadata metadata, InputStream inputStream) {
+        long started = System.nanoTime();
+        String uploadId = amazonS3.initiateMultipartUpload(new InitiateMultipartUploadRequest(path, key, metadata))
+                .getUploadId();
+        Semaphore inFlight = new Semaphore(concurrency);
+        AtomicBoolean failed = new AtomicBoolean();
+        List<Future<PartETag>> parts = new ArrayList<>();
+        try {
+            long uploaded = 0;
+            while (!failed.get()) {
+                inFlight.acquire();
+                byte[] buffer = new byte[partSize];
+                int read = IOUtils.read(inputStream, buffer);
+                if (read == 0 && !parts.isEmpty()) {
+                    inFlight.release();
+                    break;
+                }
+                uploaded += read;
+                parts.add(executor.submit(uploadPart(path, key, uploadId, parts.size() + 1, buffer, read, inFlight, failed)));
+                if (read < partSize) {
+                    break;
+                }
+            }
+            List<PartETag> eTags = new ArrayList<>(parts.size());
+            for (Future<PartETag> part : parts) {
+                eTags.add(part.get());
+            }
+            CompleteMultipartUploadResult result = amazonS3.completeMultipartUpload(
+                    new CompleteMultipartUploadRequest(path, key, uploadId, eTags));
+            log.info("Multipart upload of {} finished, {} parts, {} bytes in {} ms",
+                    key, eTags.size(), uploaded, millisSince(started));
+
+            return UploadResult.builder()
+                    .url(amazonS3.getUrl(path, key).toString())
+                    .eTag(result.getETag())
+                    .parts(eTags.size())
+                    .build();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw abort(path, key, uploadId, parts, e);
+        } catch (ExecutionException e) {
+            throw abort(path, key, uploadId, parts, e.getCause());
+        } catch (IOException | RuntimeException e) {
+            throw abort(path, key, uploadId, parts, e);
+        }
+    }
+
+    private Callable<PartETag> uploadPart(String path, String key, String uploadId, int partNumber,
+                                          byte[] buffer, int length, Semaphore inFlight, AtomicBoolean failed) {
+        return () -> {
+            long started = System.nanoTime();
+            try {
+                UploadPartRequest request = new UploadPartRequest()
+                        .withBucketName(path)
+                        .withKey(key)
+                        .withUploadId(uploadId)
+                        .withPartNumber(partNumber)
+                        .withInputStream(new ByteArrayInputStream(buffer, 0, length))
+                        .withPartSize(length);
+                PartETag partETag = amazonS3.uploadPart(request).getPartETag();
+                log.debug("Uploaded part {} of {}, {} bytes in {} ms", partNumber, key, length, millisSince(started));
+
+                return partETag;
+            } catch (RuntimeException e) {
+                failed.set(true);
+                log.error("Failed to upload part {} of {} after {} ms, {}", partNumber, key, millisSince(started), e.getMessage());
+                throw e;
+            } finally {
+                inFlight.release();
+            }
+        };
+    }
+
+    private IllegalStateException abort(String path, String key, String uploadId,
+                                        List<Future<PartETag>> parts, Throwable cause) {
+        parts.forEach(part -> part.cancel(true));
+        try {
+            amazonS3.abortMultipartUpload(new AbortMultipartUploadRequest(path, key, uploadId));
+        } catch (RuntimeException e) {
+            log.error("Failed to abort multipart upload {} of {}, {}", uploadId, key, e.getMessage());
+        }
+        return new IllegalStateException("Failed to upload the file", cause);
+    }
+
+    private static long millisSince(long started) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -3,20 +3,52 @@ package com.odhiambopaul.springamazon.service;
 import com.amazonaws.services.sns.AmazonSNSClient;
 import com.amazonaws.services.sns.model.PublishRequest;
 import com.amazonaws.services.sqs.AmazonSQSClient;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
 import com.amazonaws.services.sqs.model.Message;
-import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
 import org.springframework.context.annotation.Profile;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Relays upload notifications from SQS to SNS. A configurable number of pollers long-poll the queue
+ * for batches of up to 10 messages, publish them in parallel and delete only the published ones in
+ * one batch call. A poller does not receive again until its batch is done, which bounds the number
+ * of in-flight messages; the visibility of messages still being published is extended periodically.
+ */
 @Profile("withsns")
 @Service
 @RequiredArgsConstructor
 @Slf4j
-public class SchedulerImpl implements Scheduler {
+public class SchedulerImpl implements Scheduler, SmartLifecycle {
+
+    private static final int MAX_BATCH_SIZE = 10;
+    private static final int WAIT_TIME_SECONDS = 20;
+    private static final long ERROR_BACKOFF_MILLIS = 1000;
 
     @Value("${aws.sns.topic.arn}")
     private String topicArn;
@@ -24,18 +56,148 @@ public class SchedulerImpl implements Scheduler {
     @Value("${aws.sqs.url}")
     private String sqsUrl;
 
+    @Value("${aws.sqs.relay.pollers}")
+    private int pollers;
+
+    @Value("${aws.sqs.relay.publish-threads}")
+    private int publishThreads;
+
+    @Value("${aws.sqs.relay.visibility-timeout-seconds}")
+    private int visibilityTimeout;
+
     private final AmazonSNSClient amazonSNSClient;
     private final AmazonSQSClient amazonSQSClient;
 
+    private volatile boolean running;
+    private ExecutorService pollerExecutor;
+    private ExecutorService publishExecutor;
+    private ScheduledExecutorService visibilityExtender;
+
+    @Override
+    public void start() {
+        log.info("SQS relay is starting with {} pollers", pollers);
+        pollerExecutor = Executors.newFixedThreadPool(pollers, new CustomizableThreadFactory("sqs-poller-"));
+        publishExecutor = new ThreadPoolExecutor(publishThreads, publishThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(pollers * MAX_BATCH_SIZE),
+                new CustomizableThreadFactory("sns-publisher-"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        visibilityExtender = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("sqs-visibility-"));
+        running = true;
+        for (int i = 0; i < pollers; i++) {
+            pollerExecutor.execute(this::poll);
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        pollerExecutor.shutdown();
+        try {
+            if (!pollerExecutor.awaitTermination(WAIT_TIME_SECONDS + 5, TimeUnit.SECONDS)) {
+                pollerExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        publishExecutor.shutdown();
+        visibilityExtender.shutdownNow();
+        log.info("SQS relay stopped");
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    void poll() {
+        while (running) {
+            try {
+                processQueueMessagesToSns();
+            } catch (RuntimeException e) {
+                log.error("SQS relay failed, {}", e.getMessage());
+                try {
+                    Thread.sleep(ERROR_BACKOFF_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
 
-    @Scheduled(cron = "0 0/1 * * * ?")
     void processQueueMessagesToSns() {
-        log.info("Scheduler is running");
-        ReceiveMessageResult receiveMessageResult = amazonSQSClient.receiveMessage(sqsUrl);
-        receiveMessageResult.getMessages().stream()
-                .peek(m -> amazonSQSClient.deleteMessage(sqsUrl, m.getReceiptHandle()))
-                .map(Message::getBody)
-                .peek(m -> log.info("Message received {}", m))
-                .forEach(b -> amazonSNSClient.publish(new PublishRequest(topicArn, b, "New image has been uploaded")));
+        ReceiveMessageRequest request = new ReceiveMessageRequest(sqsUrl)
+                .withMaxNumberOfMessages(MAX_BATCH_SIZE)
+                .withWaitTimeSeconds(WAIT_TIME_SECONDS)
+                .withVisibilityTimeout(visibilityTimeout);
+        List<Message> messages = amazonSQSClient.receiveMessage(request).getMessages();
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        Set<Message> inFlight = ConcurrentHashMap.newKeySet();
+        inFlight.addAll(messages);
+        long period = Math.max(1, visibilityTimeout / 2);
+        ScheduledFuture<?> extension = visibilityExtender.scheduleAtFixedRate(
+                () -> extendVisibility(inFlight), period, period, TimeUnit.SECONDS);
+        try {
+            List<CompletableFuture<Message>> publishes = new ArrayList<>(messages.size());
+            for (Message message : messages) {
+                publishes.add(CompletableFuture.supplyAsync(() -> publish(message, inFlight), publishExecutor));
+            }
+            List<Message> published = publishes.stream()
+                    .map(CompletableFuture::join)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+            deleteMessages(published);
+            log.info("Relayed {} of {} messages", published.size(), messages.size());
+        } finally {
+            extension.cancel(false);
+        }
+    }
+
+    private Message publish(Message message, Set<Message> inFlight) {
+        try {
+            log.debug("Message received {}", message.getBody());
+            amazonSNSClient.publish(new PublishRequest(topicArn, message.getBody(), "New image has been uploaded"));
+            return message;
+        } catch (RuntimeException e) {
+            // left on the queue, it becomes visible again once the visibility timeout expires
+            log.error("Failed to publish message {}, {}", message.getMessageId(), e.getMessage());
+            return null;
+        } finally {
+            inFlight.remove(message);
+        }
+    }
+
+    private void deleteMessages(List<Message> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        List<DeleteMessageBatchRequestEntry> entries = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            entries.add(new DeleteMessageBatchRequestEntry(String.valueOf(i), messages.get(i).getReceiptHandle()));
+        }
+        List<BatchResultErrorEntry> failed = amazonSQSClient
+                .deleteMessageBatch(new DeleteMessageBatchRequest(sqsUrl, entries))
+                .getFailed();
+        failed.forEach(f -> log.error("Failed to delete relayed message {}, {}", f.getId(), f.getMessage()));
+    }
+
+    private void extendVisibility(Collection<Message> inFlight) {
+        List<ChangeMessageVisibilityBatchRequestEntry> entries = new ArrayList<>();
+        for (Message message : inFlight) {
+            entries.add(new ChangeMessageVisibilityBatchRequestEntry(String.valueOf(entries.size()), message.getReceiptHandle())
+                    .withVisibilityTimeout(visibilityTimeout));
+        }
+        if (entries.isEmpty()) {
+            return;
+        }
+        try {
+            amazonSQSClient.changeMessageVisibilityBatch(new ChangeMessageVisibilityBatchRequest(sqsUrl, entries));
+            log.info("Extended visibility of {} slow messages", entries.size());
+        } catch (RuntimeException e) {
+            log.error("Failed to extend message visibility, {}", e.getMessage());
+        }
     }
 }
@@ -0,0 +1,163 @@
+package com.odhiambopaul.springamazon.service;
+
+import com.amazonaws.services.sns.AmazonSNSClient;
+import com.amazonaws.services.sns.model.ListSubscriptionsByTopicRequest;
+import com.amazonaws.services.sns.model.ListSubscriptionsByTopicResult;
+import com.amazonaws.services.sns.model.Subscription;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Local email to subscription ARN index of the topic. It is rebuilt by a paginated
+ * ListSubscriptionsByTopic sync and kept current by the subscribe and unsubscribe calls in between;
+ * changes made while a sync is listing are replayed on top of its result. The listing reports
+ * subscriptions awaiting confirmation without their ARN, so ARNs returned by subscribe are kept until
+ * the listing shows them or the confirmation has expired. The periodic sync can be switched off with
+ * {@code aws.sns.subscription-index.enabled}, for setups without SNS.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SubscriptionIndex {
+
+    private static final String EMAIL_PROTOCOL = "email";
+    private static final String ARN_PREFIX = "arn:";
+
+    private final AmazonSNSClient amazonSNSClient;
+
+    @Value("${aws.sns.topic.arn}")
+    private String topicArn;
+
+    @Value("${aws.sns.subscription-index.enabled}")
+    private boolean syncEnabled;
+
+    @Value("${aws.sns.subscription-pending-ttl-hours}")
+    private long pendingTtlHours;
+
+    private volatile Map<String, String> arns = new ConcurrentHashMap<>();
+    private final Map<String, Instant> pendingSince = new HashMap<>();
+    private Map<String, Optional<String>> changesDuringSync;
+
+    public Optional<String> find(String email) {
+        return Optional.ofNullable(arns.get(email));
+    }
+
+    public synchronized void put(String email, String subscriptionArn) {
+        if (subscriptionArn == null || !subscriptionArn.startsWith(ARN_PREFIX)) {
+            return;
+        }
+        arns.put(email, subscriptionArn);
+        pendingSince.put(email, Instant.now());
+        if (changesDuringSync != null) {
+            changesDuringSync.put(email, Optional.of(subscriptionArn));
+        }
+    }
+
+    public synchronized void remove(String email) {
+        arns.remove(email);
+        pendingSince.remove(email);
+        if (changesDuringSync != null) {
+            changesDuringSync.put(email, Optional.empty());
+        }
+    }
+
+    public int size() {
+        return arns.size();
+    }
+
+    /**
+     * Finds the subscription of the email, listing the topic once when this instance has not seen it,
+     * since it may have been subscribed through another instance.
+     */
+    public Optional<String> lookup(String email) {
+        Optional<String> arn = find(email);
+        if (arn.isPresent()) {
+            return arn;
+        }
+        String listed = listSubscriptions().get(email);
+        if (listed == null) {
+            return Optional.empty();
+        }
+        synchronized (this) {
+            arns.put(email, listed);
+            if (changesDuringSync != null) {
+                changesDuringSync.put(email, Optional.of(listed));
+            }
+        }
+        return Optional.of(listed);
+    }
+
+    @Scheduled(fixedDelayString = "${aws.sns.subscription-sync-interval-ms}")
+    public void sync() {
+        if (!syncEnabled) {
+            return;
+        }
+        synchronized (this) {
+            changesDuringSync = new HashMap<>();
+        }
+        try {
+            Map<String, String> listed = listSubscriptions();
+
+            synchronized (this) {
+                keepPending(listed);
+                changesDuringSync.forEach((email, arn) -> {
+                    if (arn.isPresent()) {
+                        listed.put(email, arn.get());
+                    } else {
+                        listed.remove(email);
+                    }
+                });
+                arns = listed;
+            }
+            log.info("Subscription index synced, {} subscriptions", listed.size());
+        } catch (RuntimeException e) {
+            log.error("Failed to sync subscription index, {}", e.getMessage());
+        } finally {
+            synchronized (this) {
+                changesDuringSync = null;
+            }
+        }
+    }
+
+    private Map<String, String> listSubscriptions() {
+        Map<String, String> listed = new ConcurrentHashMap<>();
+        String nextToken = null;
+        do {
+            ListSubscriptionsByTopicResult page = amazonSNSClient.listSubscriptionsByTopic(
+                    new ListSubscriptionsByTopicRequest(topicArn, nextToken));
+            for (Subscription subscription : page.getSubscriptions()) {
+                if (EMAIL_PROTOCOL.equalsIgnoreCase(subscription.getProtocol())
+                        && subscription.getSubscriptionArn().startsWith(ARN_PREFIX)) {
+                    listed.put(subscription.getEndpoint(), subscription.getSubscriptionArn());
+                }
+            }
+            nextToken = page.getNextToken();
+        } while (nextToken != null);
+        return listed;
+    }
+
+    private void keepPending(Map<String, String> listed) {
+        Instant expired = Instant.now().minus(pendingTtlHours, ChronoUnit.HOURS);
+        Iterator<Map.Entry<String, Instant>> pending = pendingSince.entrySet().iterator();
+        while (pending.hasNext()) {
+            Map.Entry<String, Instant> entry = pending.next();
+            String arn = arns.get(entry.getKey());
+            if (arn == null || listed.containsKey(entry.getKey()) || entry.getValue().isBefore(expired)) {
+                pending.remove();
+            } else {
+                listed.put(entry.getKey(), arn);
+            }
+        }
+    }
+}
@@ -0,0 +1 @@
+CREATE FULLTEXT INDEX ft_image_description ON image (description);
@@ -0,0 +1,167 @@
+package com.odhiambopaul.springamazon.service;
+
+import com.odhiambopaul.springamazon.domain.ContentObject;
+import com.odhiambopaul.springamazon.domain.Image;
+import com.odhiambopaul.springamazon.domain.UploadResult;
+import com.odhiambopaul.springamazon.repositories.ContentObjectRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ContentObjectServiceTest {
+
+    private static final String KEY = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+    private static final String OTHER_KEY = "fedcba9876543210fedcba9876543210fedcba9876543210fedcba9876543210";
+    private static final String PATH = "bucket/images";
+
+    @Mock
+    private ContentObjectRepository repository;
+    @Mock
+    private FileStoreService fileStore;
+    @Mock
+    private DerivativeService derivativeService;
+
+    private ContentObjectService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new ContentObjectService(repository, fileStore, derivativeService);
+    }
+
+    @Test
+    void acquireCountsAnotherReferenceToExistingContent() {
+        ContentObject existing = content(2);
+        when(repository.incrementRefCount(KEY)).thenReturn(1);
+        when(repository.findById(KEY)).thenReturn(Optional.of(existing));
+
+        assertThat(service.acquire(KEY, PATH, 10, "image/png", null)).isSameAs(existing);
+        verify(repository, never()).insert(any());
+    }
+
+    @Test
+    void acquireInsertsNewContentWithOneReference() {
+        when(repository.incrementRefCount(KEY)).thenReturn(0);
+        when(repository.insert(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        ContentObject content = service.acquire(KEY, PATH, 10, "image/png", uploaded());
+
+        assertThat(content.getRefCount()).isEqualTo(1);
+        assertThat(content.getETag()).isEqualTo("etag");
+        assertThat(content.getUrl()).isEqualTo("https://bucket/images/" + KEY);
+    }
+
+    @Test
+    void acquireFailsWhenSkippedContentWasRemovedMeanwhile() {
+        when(repository.incrementRefCount(KEY)).thenReturn(0);
+
+        assertThatThrownBy(() -> service.acquire(KEY, PATH, 10, "image/png", null))
+                .isInstanceOf(IllegalStateException.class);
+        verify(repository, never()).insert(any());
+    }
+
+    @Test
+    void acquireCountsReferenceWhenConcurrentFirstUploadInsertedFirst() {
+        ContentObject inserted = content(2);
+        when(repository.incrementRefCount(KEY)).thenReturn(0, 1);
+        when(repository.insert(any())).thenThrow(new DataIntegrityViolationException("duplicate key"));
+        when(repository.findById(KEY)).thenReturn(Optional.of(inserted));
+
+        assertThat(service.acquire(KEY, PATH, 10, "image/png", uploaded())).isSameAs(inserted);
+    }
+
+    @Test
+    void releaseDropsContentWithItsLastReference() {
+        ContentObject content = content(0);
+        when(repository.findById(KEY)).thenReturn(Optional.of(content));
+
+        assertThat(service.release(KEY)).isTrue();
+        verify(repository).decrementRefCount(KEY);
+        verify(repository).delete(content);
+    }
+
+    @Test
+    void releaseKeepsContentWhileReferenced() {
+        when(repository.findById(KEY)).thenReturn(Optional.of(content(1)));
+
+        assertThat(service.release(KEY)).isFalse();
+        verify(repository, never()).delete(any());
+    }
+
+    @Test
+    void deleteStoredSkipsContentUploadedAgain() {
+        // a dedup upload re-created the content between the delete commit and the object delete
+        when(repository.existsById(KEY)).thenReturn(true);
+
+        service.deleteStored(image());
+
+        verify(fileStore, never()).delete(any(), any());
+        verify(derivativeService, never()).deleteDerivatives(any());
+    }
+
+    @Test
+    void deleteStoredRemovesUnreferencedObjectAndVariants() {
+        Image image = image();
+        when(repository.existsById(KEY)).thenReturn(false);
+
+        service.deleteStored(image);
+
+        verify(fileStore).delete(PATH, KEY);
+        verify(derivativeService).deleteDerivatives(image);
+    }
+
+    @Test
+    void bulkDeleteStoredSkipsContentUploadedAgain() {
+        Image reuploaded = image();
+        Image unreferenced = Image.builder()
+                .imageFileName("other.png")
+                .imagePath(PATH)
+                .objectKey(OTHER_KEY)
+                .build();
+        when(repository.findAllById(any())).thenReturn(Collections.singletonList(content(1)));
+        when(derivativeService.derivativePaths(any())).thenReturn(Collections.emptyList());
+        when(fileStore.deleteAll(any(), any())).thenReturn(Collections.emptyList());
+
+        assertThat(service.deleteStored(Arrays.asList(reuploaded, unreferenced))).isEmpty();
+
+        verify(fileStore).deleteAll(PATH, Collections.singletonList(OTHER_KEY));
+    }
+
+    private static ContentObject content(int refCount) {
+        return ContentObject.builder()
+                .objectKey(KEY)
+                .imagePath(PATH)
+                .refCount(refCount)
+                .build();
+    }
+
+    private static UploadResult uploaded() {
+        return UploadResult.builder()
+                .url("https://bucket/images/" + KEY)
+                .eTag("etag")
+                .parts(1)
+                .build();
+    }
+
+    private static Image image() {
+        return Image.builder()
+                .imageFileName("face.png")
+                .imagePath(PATH)
+                .objectKey(KEY)
+                .build();
+    }
+}
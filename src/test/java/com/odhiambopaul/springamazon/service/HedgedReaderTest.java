@@ -0,0 +1,191 @@
+package com.odhiambopaul.springamazon.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HedgedReaderTest {
+
+    private static final int WINDOW = 64;
+    private static final long MIN_DELAY_MS = 50;
+
+    private SimpleMeterRegistry registry;
+    private HedgedReader reader;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        reader.shutdown();
+    }
+
+    @Test
+    void secondAttemptWinsWhenPrimaryIsSlow() throws InterruptedException {
+        reader = warmedUp(1.0);
+        CountDownLatch primaryDone = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+
+        String value = reader.read(() -> {
+            if (calls.incrementAndGet() == 1) {
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    primaryDone.countDown();
+                }
+                throw new IllegalStateException("primary cancelled");
+            }
+            return "hedge";
+        }, ignored -> { });
+
+        assertThat(value).isEqualTo("hedge");
+        assertThat(primaryDone.await(1, TimeUnit.SECONDS)).isTrue();
+        assertThat(counter("aws.s3.hedge.attempts")).isEqualTo(1);
+        assertThat(counter("aws.s3.hedge.wins")).isEqualTo(1);
+    }
+
+    @Test
+    void losingValueIsDiscarded() throws InterruptedException {
+        reader = warmedUp(1.0);
+        CountDownLatch releasePrimary = new CountDownLatch(1);
+        List<String> discarded = new CopyOnWriteArrayList<>();
+        CountDownLatch discardedLatch = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+
+        String value = reader.read(() -> {
+            if (calls.incrementAndGet() == 1) {
+                // ignores the interrupt of the cancel, like a read already past its blocking call
+                awaitUninterruptibly(releasePrimary);
+                return "primary";
+            }
+            return "hedge";
+        }, loser -> {
+            discarded.add(loser);
+            discardedLatch.countDown();
+        });
+        releasePrimary.countDown();
+
+        assertThat(value).isEqualTo("hedge");
+        assertThat(discardedLatch.await(1, TimeUnit.SECONDS)).isTrue();
+        assertThat(discarded).containsExactly("primary");
+    }
+
+    @Test
+    void slowReadIsNotHedgedWhenBudgetIsSpent() {
+        reader = warmedUp(0);
+        AtomicInteger calls = new AtomicInteger();
+
+        String value = reader.read(() -> {
+            calls.incrementAndGet();
+            sleep(3 * MIN_DELAY_MS);
+            return "primary";
+        }, ignored -> { });
+
+        assertThat(value).isEqualTo("primary");
+        assertThat(calls).hasValue(1);
+        assertThat(counter("aws.s3.hedge.capped")).isEqualTo(1);
+        assertThat(counter("aws.s3.hedge.attempts")).isZero();
+    }
+
+    @Test
+    void failingHedgeLeavesThePrimaryToAnswer() {
+        reader = warmedUp(1.0);
+        AtomicInteger calls = new AtomicInteger();
+
+        String value = reader.read(() -> {
+            if (calls.incrementAndGet() == 1) {
+                sleep(3 * MIN_DELAY_MS);
+                return "primary";
+            }
+            throw new IllegalStateException("hedge failed");
+        }, ignored -> { });
+
+        assertThat(value).isEqualTo("primary");
+        assertThat(counter("aws.s3.hedge.attempts")).isEqualTo(1);
+        assertThat(counter("aws.s3.hedge.wins")).isZero();
+    }
+
+    @Test
+    void readFailsOnceBothAttemptsFailed() {
+        reader = warmedUp(1.0);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThatThrownBy(() -> reader.read(() -> {
+            if (calls.incrementAndGet() == 1) {
+                sleep(3 * MIN_DELAY_MS);
+                throw new IllegalStateException("primary failed");
+            }
+            throw new IllegalStateException("hedge failed");
+        }, ignored -> { }))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageEndingWith("failed");
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    void fastFailureIsNotHeldBackUntilTheHedgeDelay() {
+        reader = warmedUp(1.0);
+        long start = System.nanoTime();
+
+        assertThatThrownBy(() -> reader.read(() -> {
+            throw new IllegalStateException("primary failed");
+        }, ignored -> { }))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("primary failed");
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(MIN_DELAY_MS);
+        assertThat(counter("aws.s3.hedge.attempts")).isZero();
+    }
+
+    /**
+     * Fills the latency window with fast reads, so the hedge delay settles at the minimum delay.
+     */
+    private HedgedReader warmedUp(double maxRate) {
+        HedgedReader hedgedReader = new HedgedReader(true, 0.95, maxRate, MIN_DELAY_MS, WINDOW, 4, registry);
+        for (int i = 0; i < WINDOW; i++) {
+            hedgedReader.read(() -> "warm-up", ignored -> { });
+        }
+        return hedgedReader;
+    }
+
+    private double counter(String name) {
+        return registry.get(name).counter().count();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted", e);
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
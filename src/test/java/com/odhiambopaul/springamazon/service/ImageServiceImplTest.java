@@ -0,0 +1,152 @@
+package com.odhiambopaul.springamazon.service;
+
+import com.amazonaws.services.lambda.AWSLambdaClient;
+import com.amazonaws.services.sns.AmazonSNSClient;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.odhiambopaul.springamazon.domain.ContentObject;
+import com.odhiambopaul.springamazon.domain.Image;
+import com.odhiambopaul.springamazon.domain.UploadResult;
+import com.odhiambopaul.springamazon.repositories.ImageRepository;
+import com.odhiambopaul.springamazon.repositories.OutboxMessageRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ImageServiceImplTest {
+
+    private static final String OLD_KEY = "1111111111111111111111111111111111111111111111111111111111111111";
+    private static final String NEW_KEY = "2222222222222222222222222222222222222222222222222222222222222222";
+
+    @Mock
+    private FileStoreService fileStore;
+    @Mock
+    private AsyncFileStoreService asyncFileStore;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+    @Mock
+    private ImageRepository repository;
+    @Mock
+    private RandomImageSelector randomImageSelector;
+    @Mock
+    private DerivativeService derivativeService;
+    @Mock
+    private ContentObjectService contentObjects;
+    @Mock
+    private AmazonSNSClient amazonSNSClient;
+    @Mock
+    private SubscriptionIndex subscriptionIndex;
+    @Mock
+    private OutboxMessageRepository outboxRepository;
+    @Mock
+    private AWSLambdaClient awsLambdaClient;
+    @Mock
+    private LambdaNotifier lambdaNotifier;
+    @Mock
+    private Bulkhead s3Bulkhead;
+    @Mock
+    private Bulkhead snsBulkhead;
+    @Mock
+    private Bulkhead lambdaBulkhead;
+    @Mock
+    private ObjectMapper mapper;
+
+    private ImageServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        service = new ImageServiceImpl(fileStore, asyncFileStore, transactionTemplate, repository,
+                randomImageSelector, derivativeService, contentObjects, amazonSNSClient, subscriptionIndex,
+                outboxRepository, awsLambdaClient, lambdaNotifier, s3Bulkhead, snsBulkhead, lambdaBulkhead, mapper);
+    }
+
+    @Test
+    void uploadingNewContentUnderAnExistingNameReleasesThePreviousContent() {
+        Image existing = image(OLD_KEY);
+        when(contentObjects.hash(any())).thenReturn(NEW_KEY);
+        when(contentObjects.exists(NEW_KEY)).thenReturn(false);
+        when(fileStore.upload(any(), eq(NEW_KEY), any(), anyLong(), any(), any())).thenReturn(uploaded());
+        when(contentObjects.acquire(eq(NEW_KEY), any(), anyLong(), any(), any())).thenReturn(content(NEW_KEY));
+        when(repository.findByImageFileName("face.png")).thenReturn(existing);
+        when(contentObjects.release(OLD_KEY)).thenReturn(true);
+        when(repository.save(any(Image.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        Image saved = service.uploadImage("face", file());
+
+        assertThat(saved.getId()).isEqualTo(existing.getId());
+        assertThat(saved.getObjectKey()).isEqualTo(NEW_KEY);
+        verify(contentObjects).deleteStoredAfterCommit(existing);
+    }
+
+    @Test
+    void uploadingTheSameContentUnderTheSameNameKeepsTheStoredObject() {
+        Image existing = image(NEW_KEY);
+        when(contentObjects.hash(any())).thenReturn(NEW_KEY);
+        when(contentObjects.exists(NEW_KEY)).thenReturn(true);
+        when(contentObjects.acquire(eq(NEW_KEY), any(), anyLong(), any(), any())).thenReturn(content(NEW_KEY));
+        when(repository.findByImageFileName("face.png")).thenReturn(existing);
+        when(contentObjects.release(NEW_KEY)).thenReturn(false);
+        when(repository.save(any(Image.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        service.uploadImage("face", file());
+
+        verify(fileStore, never()).upload(any(), any(), any(), anyLong(), any(), any());
+        verify(contentObjects, never()).deleteStoredAfterCommit(any());
+    }
+
+    @Test
+    void deletingTheLastReferenceRemovesTheObjectOnlyAfterCommit() {
+        Image existing = image(OLD_KEY);
+        when(repository.findByImageFileName("face.png")).thenReturn(existing);
+        when(repository.deleteByImageFileName("face.png")).thenReturn(1L);
+        when(contentObjects.release(OLD_KEY)).thenReturn(true);
+
+        service.deleteImageByName("face.png");
+
+        verify(contentObjects).deleteStoredAfterCommit(existing);
+        verify(contentObjects, never()).deleteStored(any(Image.class));
+    }
+
+    private static MockMultipartFile file() {
+        return new MockMultipartFile("file", "face.png", "image/png", new byte[]{1, 2, 3});
+    }
+
+    private static Image image(String objectKey) {
+        return Image.builder()
+                .id(7L)
+                .imageFileName("face.png")
+                .imagePath("bucket/images")
+                .objectKey(objectKey)
+                .build();
+    }
+
+    private static ContentObject content(String objectKey) {
+        return ContentObject.builder()
+                .objectKey(objectKey)
+                .imagePath("bucket/images")
+                .url("https://bucket/images/" + objectKey)
+                .eTag("etag")
+                .refCount(1)
+                .build();
+    }
+
+    private static UploadResult uploaded() {
+        return UploadResult.builder()
+                .url("https://bucket/images/" + NEW_KEY)
+                .eTag("etag")
+                .parts(1)
+                .build();
+    }
+}